@@ -17,6 +17,7 @@ import static org.openhab.binding.lightwaverf.internal.LWBindingConstants.*;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.client.HttpClient;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartTypeAdapters;
 import org.openhab.binding.lightwaverf.internal.handler.LightwaverfConnectAccountHandler;
 import org.openhab.binding.lightwaverf.internal.handler.LightwaverfConnectTRVHandler;
 import org.openhab.binding.lightwaverf.internal.handler.LightwaverfSmartAccountHandler;
@@ -50,8 +51,8 @@ public class LWHandlerFactory extends BaseThingHandlerFactory {
 
     private final WebSocketFactory webSocketFactory;
     private final HttpClient httpClient;
-    private final Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
-            .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+    private final Gson gson = LightwaverfSmartTypeAdapters.register(new GsonBuilder())
+            .excludeFieldsWithoutExposeAnnotation().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
 
     @Override
     public boolean supportsThingType(ThingTypeUID thingTypeUID) {
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.lightwaverf.internal.converters.LightwaverfSmartStateConverter;
+import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartDeviceListener;
+import org.openhab.core.thing.ChannelUID;
+
+/**
+ * The {@link LightwaverfSmartChannelTarget} is where updates for a feature are sent, resolved once when
+ * the feature is added so a received update only needs the featureid to be looked up.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartChannelTarget {
+
+    private final String deviceId;
+    private final ChannelUID channelUID;
+    private final @Nullable ChannelUID costChannelUID;
+    private final LightwaverfSmartDeviceListener listener;
+    private final @Nullable LightwaverfSmartStateConverter converter;
+    private final @Nullable LightwaverfSmartThrottle throttle;
+    private boolean published;
+    private long lastValue;
+    private long lastPublished;
+    private boolean pending;
+    private long pendingValue;
+    private boolean scheduled;
+    private boolean updateWaiting;
+    private long updateValue;
+
+    public LightwaverfSmartChannelTarget(String deviceId, ChannelUID channelUID, @Nullable ChannelUID costChannelUID,
+            LightwaverfSmartDeviceListener listener, @Nullable LightwaverfSmartStateConverter converter,
+            @Nullable LightwaverfSmartThrottle throttle) {
+        this.deviceId = deviceId;
+        this.channelUID = channelUID;
+        this.costChannelUID = costChannelUID;
+        this.listener = listener;
+        this.converter = converter;
+        this.throttle = throttle;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public ChannelUID getChannelUID() {
+        return channelUID;
+    }
+
+    /**
+     * @return the channel showing the cost of a power or energy feature, or null if it has none
+     */
+    public @Nullable ChannelUID getCostChannelUID() {
+        return costChannelUID;
+    }
+
+    public LightwaverfSmartDeviceListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the converter for the feature type or null if the type isn't supported
+     */
+    public @Nullable LightwaverfSmartStateConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Checks a value received against the last one published to the channel
+     *
+     * @param value the value received
+     * @param now the current time in nanoseconds
+     * @param forceInterval the nanoseconds after which an unchanged value is published again, 0 to never
+     * @return what to do with the value
+     */
+    public synchronized Decision offer(long value, long now, long forceInterval) {
+        if (published && (forceInterval <= 0 || now - lastPublished < forceInterval)) {
+            if (Math.abs(value - lastValue) <= getDeadband()) {
+                // Back near the last value published so anything held is no longer needed
+                pending = false;
+                return value == lastValue ? Decision.UNCHANGED : Decision.THROTTLED;
+            }
+        }
+        if (published && now - lastPublished < getInterval()) {
+            pendingValue = value;
+            pending = true;
+            if (scheduled) {
+                return Decision.THROTTLED;
+            }
+            scheduled = true;
+            return Decision.SCHEDULE;
+        }
+        pending = false;
+        published = true;
+        lastValue = value;
+        lastPublished = now;
+        return Decision.PUBLISH;
+    }
+
+    /**
+     * @return the nanoseconds until a held value can be published
+     */
+    public synchronized long getTrailingDelay(long now) {
+        return Math.max(0, lastPublished + getInterval() - now);
+    }
+
+    /**
+     * Publishes the last value held back by the interval
+     *
+     * @param now the current time in nanoseconds
+     * @return the value to publish or null if nothing was held
+     */
+    public synchronized @Nullable Long trailing(long now) {
+        scheduled = false;
+        if (!pending) {
+            return null;
+        }
+        pending = false;
+        published = true;
+        lastValue = pendingValue;
+        lastPublished = now;
+        return pendingValue;
+    }
+
+    /**
+     * Sets the value for the channel update waiting in the event lane
+     *
+     * @return true if an update has to be added to the lane, false if the one waiting will publish the value
+     */
+    public synchronized boolean offerUpdate(long value) {
+        updateValue = value;
+        if (updateWaiting) {
+            return false;
+        }
+        updateWaiting = true;
+        return true;
+    }
+
+    /**
+     * @return the latest value for the update being run by the event lane, a later value needs a new update
+     */
+    public synchronized long takeUpdate() {
+        updateWaiting = false;
+        return updateValue;
+    }
+
+    /**
+     * Used when the event lane couldn't take the update, or was stopped before running it, so the next value
+     * adds a new one
+     */
+    public synchronized void cancelUpdate() {
+        updateWaiting = false;
+    }
+
+    /**
+     * Forgets the last value published so the next one is always published, used when a command is sent as
+     * the channel state may no longer match the device
+     */
+    public synchronized void forget() {
+        published = false;
+        pending = false;
+    }
+
+    private long getDeadband() {
+        LightwaverfSmartThrottle throttle = this.throttle;
+        return throttle != null ? throttle.getDeadband() : 0;
+    }
+
+    private long getInterval() {
+        LightwaverfSmartThrottle throttle = this.throttle;
+        return throttle != null ? throttle.getInterval() : 0;
+    }
+
+    /**
+     * What to do with a value received for the channel
+     */
+    public enum Decision {
+        /** Publish the value now */
+        PUBLISH,
+        /** Skip the value as the channel already has it */
+        UNCHANGED,
+        /** Skip the value as it is within the deadband or will be published with a later one */
+        THROTTLED,
+        /** Hold the value and schedule it to be published when the interval is over */
+        SCHEDULE
+    }
+}
@@ -12,31 +12,52 @@
  */
 package org.openhab.binding.lightwaverf.internal;
 
-import java.awt.Color;
-import java.time.DayOfWeek;
-import java.time.LocalDate;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.lightwaverf.internal.config.LightwaverfSmartAccountConfig;
+import org.openhab.binding.lightwaverf.internal.converters.LightwaverfSmartStateConverter;
+import org.openhab.binding.lightwaverf.internal.converters.LightwaverfSmartStateConverters;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartEvent;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartEventDecoder;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartItem;
 import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartPayload;
 import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
 import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartDeviceListener;
 import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartListener;
-import org.openhab.core.library.types.*;
-import org.openhab.core.types.State;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartBackoff;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartCommandQueue;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartEventLanes;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartLane;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartOverflowPolicy;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartRttEstimator;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartTokenBucket;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartTransaction;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartTransaction.Status;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartTransactionTable;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.thing.ChannelUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 /**
  * 
@@ -47,21 +68,74 @@ import com.google.gson.Gson;
 public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmartListener {
 
     private final Logger logger = LoggerFactory.getLogger(LightwaverfSmartCommandManager.class);
-    private final ConcurrentMap<Integer, CountDownLatch> latchMap = new ConcurrentHashMap<Integer, CountDownLatch>();
-    /** Queue of messages to send */
-    private final BlockingDeque<LightwaverfSmartRequest> queue = new LinkedBlockingDeque<LightwaverfSmartRequest>();
-    /** Map of Integers so we can count retry attempts. */
-    private final ConcurrentMap<Integer, Integer> retryCountMap = new ConcurrentHashMap<Integer, Integer>();
-    private final ConcurrentMap<Integer, LightwaverfSmartRequest> messages = new ConcurrentHashMap<Integer, LightwaverfSmartRequest>();
+    /** Maximum number of transactions kept while waiting on a response or a retry */
+    private static final int MAX_TRANSACTIONS = 256;
+    /** Resolution of the response timeouts */
+    private static final long TIMEOUT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    /** Longest the dispatcher waits for a command when nothing is waiting on a timeout */
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /** Number of threads updating channels, each device is always updated from the same one */
+    private static final int EVENT_LANES = 4;
+    /** Number of channels each event lane holds an update for before updates are dropped */
+    private static final int EVENT_LANE_CAPACITY = 1000;
+
+    /** Commands sent to the websocket that are still waiting on a response or a retry */
+    private final LightwaverfSmartTransactionTable transactions = new LightwaverfSmartTransactionTable(
+            MAX_TRANSACTIONS, TIMEOUT_TICK_NANOS, 512);
+    /** Commands held back because an earlier command for the same device is still in flight */
+    private final Map<String, Deque<LightwaverfSmartRequest>> waiting = new HashMap<String, Deque<LightwaverfSmartRequest>>();
+    /** Queue of messages to send, split into priority lanes */
+    private final LightwaverfSmartCommandQueue queue = new LightwaverfSmartCommandQueue();
+    /** Write commands still waiting to be sent, by featureid, so newer values can replace them */
+    private final Map<String, LightwaverfSmartRequest> pendingWrites = new HashMap<String, LightwaverfSmartRequest>();
+    /** Latest write for each feature made while the websocket was offline, sent again after login */
+    private final Map<String, LightwaverfSmartRequest> journal = new LinkedHashMap<String, LightwaverfSmartRequest>();
+    /** Number of writes replaced by a newer value before they were sent */
+    private final AtomicLong coalescedWrites = new AtomicLong();
+    /** Number of queued commands dropped to make room for new ones */
+    private final AtomicLong droppedCommands = new AtomicLong();
+    /** Number of new commands not queued as the queue was full */
+    private final AtomicLong rejectedCommands = new AtomicLong();
+    /** Number of commands discarded as they were queued for longer than their time to live */
+    private final AtomicLong expiredCommands = new AtomicLong();
+    /** Number of received values skipped as the channel already had them */
+    private final AtomicLong unchangedUpdates = new AtomicLong();
+    /** Number of received values published to a channel */
+    private final AtomicLong changedUpdates = new AtomicLong();
+    /** Nanoseconds after which an unchanged value is published again, 0 to never */
+    private long forceUpdateInterval = 0;
+    /** Number of received values held back by a deadband or interval */
+    private final AtomicLong throttledUpdates = new AtomicLong();
+    /** Throttle for each type of channel that can be limited, kept for the life of the channels using them */
+    private final Map<String, LightwaverfSmartThrottle> throttles = new HashMap<>();
+    /** Cost in pounds of one watt for an hour, power is sent in watts and energy in watt hours */
+    private volatile double costPerUnit = 0;
+    /** Used to publish values held back by a throttle */
+    private @Nullable ScheduledExecutorService scheduler;
     // For multiple hubs the response only has a simplified id so we need to log the actual device
     // private final ConcurrentMap<Integer, String> sentByDevice = new ConcurrentHashMap<Integer, String>();
 
     private final Gson gson;
-    private int timeoutForOkMessagesMs = 1000;
+    private final ThreadLocal<LightwaverfSmartEvent> events = ThreadLocal.withInitial(LightwaverfSmartEvent::new);
+    /** Works out the time to wait for a response from measured round trip times */
+    private LightwaverfSmartRttEstimator rtt = new LightwaverfSmartRttEstimator(TimeUnit.SECONDS.toNanos(1),
+            TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(1));
     private Integer retries = 0;
+    /** Delay before a failed command is sent again */
+    private LightwaverfSmartBackoff retryBackoff = new LightwaverfSmartBackoff(TimeUnit.SECONDS.toNanos(1),
+            TimeUnit.SECONDS.toNanos(1));
+    /** Number of transactions allowed on the websocket at the same time */
+    private int window = 1;
+    private Semaphore slots = new Semaphore(1);
+    /** Maximum number of commands sent as items of a single websocket message */
+    private int batchSize = 1;
+    /** Time in milliseconds to wait for further commands to add to a batch */
+    private int batchDelay = 0;
+    private LightwaverfSmartTokenBucket rateLimiter = new LightwaverfSmartTokenBucket(0, 1);
+    /** Thread sending the queued commands, replaced on each start */
+    private volatile @Nullable Thread dispatcher;
     private final LightwaverfSmartListener listener;
     // Device Listeners
-    private Map<String, LightwaverfSmartDeviceListener> deviceListeners = new HashMap<>();
     // Current transactionid
     private int transactionId = 1;
     private final String uuid = UUID.randomUUID().toString();
@@ -76,25 +150,97 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
     private String token = "";
     private Boolean connected = false;
 
-    private Map<String, String> featureMap = new HashMap<String, String>();
+    // Added and removed by the device handlers while being read for every message received
+    private final Map<String, LightwaverfSmartChannelTarget> features = new ConcurrentHashMap<>();
+    private final Set<String> unsupportedTypes = ConcurrentHashMap.newKeySet();
+    // Channel updates are run from here so the websocket isn't held up by openHAB
+    private final LightwaverfSmartEventLanes eventLanes = new LightwaverfSmartEventLanes(EVENT_LANES,
+            EVENT_LANE_CAPACITY);
 
     public LightwaverfSmartCommandManager(LightwaverfSmartListener listener, Gson gson) {
         this.gson = gson;
         this.listener = listener;
+        // Scaled from the channel units to the raw websocket values
+        throttles.put("power", new LightwaverfSmartThrottle(1));
+        throttles.put("energy", new LightwaverfSmartThrottle(1000));
+        throttles.put("voltage", new LightwaverfSmartThrottle(10));
+        throttles.put("temperature", new LightwaverfSmartThrottle(10));
+        throttles.put("rssi", new LightwaverfSmartThrottle(1));
     }
 
-    public synchronized void start(Integer retries, Integer timeout) {
-        this.retries = retries;
-        this.timeoutForOkMessagesMs = timeout;
+    public synchronized void start(LightwaverfSmartAccountConfig config, ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        this.costPerUnit = config.electricityCost / 100000.0;
+        configureThrottle("power", config.powerDeadband, config.powerInterval);
+        configureThrottle("energy", config.energyDeadband, config.energyInterval);
+        configureThrottle("voltage", config.voltageDeadband, config.voltageInterval);
+        configureThrottle("temperature", config.temperatureDeadband, config.temperatureInterval);
+        configureThrottle("rssi", config.rssiDeadband, config.rssiInterval);
+        this.retries = config.retries;
+        this.retryBackoff = new LightwaverfSmartBackoff(TimeUnit.MILLISECONDS.toNanos(config.retryDelay),
+                TimeUnit.MILLISECONDS.toNanos(config.maxRetryDelay));
+        this.rtt = new LightwaverfSmartRttEstimator(TimeUnit.MILLISECONDS.toNanos(config.timeout),
+                TimeUnit.MILLISECONDS.toNanos(config.minTimeout), TimeUnit.MILLISECONDS.toNanos(config.maxTimeout));
+        this.window = Math.max(1, config.window);
+        this.slots = new Semaphore(this.window);
+        this.batchSize = Math.max(1, config.batchSize);
+        this.batchDelay = Math.max(0, config.batchDelay);
+        queue.setTimeToLive(TimeUnit.MILLISECONDS.toNanos(config.commandTtl));
+        this.forceUpdateInterval = TimeUnit.MILLISECONDS.toNanos(config.forceUpdateInterval);
+        queue.setCapacity(config.queueSize, LightwaverfSmartOverflowPolicy.fromConfig(config.overflowPolicy));
+        this.rateLimiter = new LightwaverfSmartTokenBucket(getRate(config), config.burst);
+        queue.setLoginsOnly(true);
         startRunning();
+        Thread dispatcher = new Thread(this, "OH-binding-lightwaverf-dispatcher");
+        dispatcher.setDaemon(true);
+        this.dispatcher = dispatcher;
+        dispatcher.start();
+        eventLanes.start();
+    }
+
+    /**
+     * @return the messages per second, from the delay between messages if the bridge still has one
+     */
+    private int getRate(LightwaverfSmartAccountConfig config) {
+        if (config.delay <= 0) {
+            return config.rate;
+        }
+        int rate = Math.max(1, 1000 / config.delay);
+        logger.info("The delay parameter has been replaced by rate, using a rate of {} messages per second from "
+                + "the delay of {}ms. Remove the delay to use the rate setting", rate, config.delay);
+        return rate;
+    }
+
+    private void configureThrottle(String type, double deadband, int interval) {
+        LightwaverfSmartThrottle throttle = throttles.get(type);
+        if (throttle != null) {
+            throttle.configure(deadband, interval);
+        }
     }
 
     public synchronized void stop() {
         stopRunning();
+        Thread dispatcher = this.dispatcher;
+        if (dispatcher != null) {
+            this.dispatcher = null;
+            dispatcher.interrupt();
+        }
+        eventLanes.stop();
+        // The updates dropped with the lanes would otherwise stop the channels ever being updated again
+        features.values().forEach(LightwaverfSmartChannelTarget::cancelUpdate);
+        queue.setLoginsOnly(true);
         queue.clear();
-        retryCountMap.clear();
-        latchMap.clear();
-        messages.clear();
+        transactions.clear();
+        synchronized (waiting) {
+            waiting.clear();
+        }
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+        }
+        synchronized (journal) {
+            journal.clear();
+        }
+        this.slots = new Semaphore(window);
         this.connected = false;
     }
 
@@ -108,65 +254,309 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
 
     @Override
     public void run() {
-        logger.trace("Message Queue is running");
-        try {
+        logger.debug("Command dispatcher started");
+        while (dispatcher == Thread.currentThread()) {
+            try {
+                dispatch();
+            } catch (InterruptedException e) {
+                logger.trace("Command dispatcher interrupted");
+            } catch (RuntimeException e) {
+                logger.error("Command dispatcher threw an exception: {}", e.getMessage());
+            }
+        }
+        logger.debug("Command dispatcher stopped");
+    }
+
+    /**
+     * Waits for a free slot in the window and a queued command then sends it, along with any other
+     * commands that can go in the same message. Returns every timer tick while transactions are
+     * waiting on a response so that expired transactions are retried.
+     */
+    private void dispatch() throws InterruptedException {
+        expireTransactions();
+        // Only wake up for the timer while there are transactions to time out
+        long wait = transactions.hasTimeouts() ? transactions.getTickNanos() : IDLE_WAIT_NANOS;
+        Semaphore slots = this.slots;
+        if (!slots.tryAcquire()) {
+            // The burst has ended so the messages batched by the websocket are written before waiting
+            flushMessages();
+            if (!slots.tryAcquire(wait, TimeUnit.NANOSECONDS)) {
+                logger.trace("Transaction window is full, waiting for responses");
+                return;
+            }
+        }
+        @Nullable
+        LightwaverfSmartRequest command = queue.poll();
+        if (command == null) {
+            flushMessages();
+            command = queue.poll(wait, TimeUnit.NANOSECONDS);
+        }
+        if (command == null) {
+            slots.release();
+            return;
+        }
+        if (isExpired(command)) {
+            slots.release();
+            return;
+        }
+        rateLimiter.acquire();
+        if (command.getOperation().equals("authenticate")) {
+            // Login has to complete before anything else is sent so it takes the whole window
+            if (!slots.tryAcquire(window - 1, rtt.getTimeoutNanos(), TimeUnit.NANOSECONDS)) {
+                slots.release();
+                rateLimiter.release();
+                queue.requeue(command);
+                return;
+            }
+            if (admit(command, window)) {
+                sendMessage(gson.toJson(command));
+                transactions.written(command.getTransactionId(), rtt.getTimeoutNanos());
+            } else {
+                rateLimiter.release();
+            }
+            return;
+        }
+        List<LightwaverfSmartRequest> batch = new ArrayList<LightwaverfSmartRequest>(batchSize);
+        if (admit(command, 1)) {
+            batch.add(command);
+        }
+        long lingerEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelay);
+        while (batch.size() < batchSize && slots.tryAcquire()) {
+            long remaining = lingerEnd - System.nanoTime();
             @Nullable
-            LightwaverfSmartRequest command = queue.take();
-            if (command != null) {
-                if (command.getOperation() == null) {
-                    sendMessage("{}");
-                    return;
+            LightwaverfSmartRequest next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                    : queue.poll();
+            if (next == null) {
+                slots.release();
+                break;
+            }
+            if (isExpired(next)) {
+                slots.release();
+                continue;
+            }
+            if (!canBatch(command, next)) {
+                slots.release();
+                queue.requeue(next);
+                break;
+            }
+            if (admit(next, 1)) {
+                batch.add(next);
+            }
+        }
+        if (batch.isEmpty()) {
+            // Nothing was admitted so the message the token was taken for isn't sent
+            rateLimiter.release();
+        }
+        sendBatch(batch);
+    }
+
+    /**
+     * Registers a command as in flight, or holds it back if the device already has a command in flight
+     *
+     * @return true if the command should be sent now
+     */
+    private boolean admit(LightwaverfSmartRequest command, int permits) {
+        String key = getOrderingKey(command);
+        // A retry still has the device to itself from when it was first sent
+        if (!transactions.isRetry(command.getTransactionId())) {
+            synchronized (waiting) {
+                Deque<LightwaverfSmartRequest> held = waiting.get(key);
+                if (held != null) {
+                    logger.trace("Holding transaction {} until the previous command for {} completes",
+                            command.getTransactionId(), key);
+                    held.addLast(command);
+                    // It goes back in the queue when the device is free, with its lane credit
+                    queue.refund(command);
+                    slots.release(permits);
+                    return false;
                 }
-                CountDownLatch latch = new CountDownLatch(1);
-                latchMap.putIfAbsent(command.getTransactionId(), latch);
-                retryCountMap.putIfAbsent(command.getTransactionId(), Integer.valueOf(1));
-                sendMessage(gson.toJson(command));
-                boolean unlatched = latch.await(timeoutForOkMessagesMs, TimeUnit.MILLISECONDS);
-                latchMap.remove(command.getTransactionId());
-
-                if (!unlatched) {
-                    Integer sendCount = retryCountMap.get(command.getTransactionId());
-                    if (sendCount == null) {
-                        logger.error("Unable to get sendCount, aborting retrying for transaction {}",
-                                command.getTransactionId());
-                    } else {
-                        if (sendCount.intValue() >= retries) {
-                            logger.error(
-                                    "Unable to send transaction {}, command value was {} : {} for Device: {}, after {} retry attempts",
-                                    command.getTransactionId(), command.getItems().get(0).getPayload().getType(),
-                                    command.getItems().get(0).getPayload().getValue(),
-                                    command.getItems().get(0).getPayload().getDeviceId(), 5);
-                            return;
-                        }
+                waiting.put(key, new ArrayDeque<LightwaverfSmartRequest>());
+            }
+        }
+        if (command.getOperation().equals("write")) {
+            // From here the value is on its way so later writes have to be queued separately
+            synchronized (pendingWrites) {
+                pendingWrites.remove(command.getItems().get(0).getPayload().getFeatureId(), command);
+            }
+        }
+        if (transactions.send(command, key, permits, rtt.getTimeoutNanos()) == null) {
+            logger.warn("Dropping transaction {} as there are already {} transactions waiting on a response",
+                    command.getTransactionId(), MAX_TRANSACTIONS);
+            synchronized (waiting) {
+                waiting.remove(key);
+            }
+            slots.release(permits);
+            return false;
+        }
+        return true;
+    }
 
-                        if (!running) {
-                            logger.error("Not retrying transactionId {} as we are stopping",
-                                    command.getTransactionId());
-                            return;
+    /**
+     * Only commands of the same class, operation and direction can share a websocket message
+     */
+    private boolean canBatch(LightwaverfSmartRequest first, LightwaverfSmartRequest next) {
+        String operation = next.getOperation();
+        return operation != null && !operation.equals("authenticate") && operation.equals(first.getOperation())
+                && next.getClass_().equals(first.getClass_()) && next.getDirection().equals(first.getDirection());
+    }
 
-                        }
-                        Integer newRetryCount = Integer.valueOf(sendCount.intValue() + 1);
-                        logger.error(
-                                "Ok message not received for transaction: {}, for Device: {}, retrying again. Retry count {}",
-                                command.getTransactionId(),
-                                featureMap.get(command.getItems().get(0).getPayload().getFeatureId()), newRetryCount);
-                        retryCountMap.put(command.getTransactionId(), newRetryCount);
-                        queue.addFirst(command);
-                    }
-                } else {
-                    logger.trace("Ok message processed for transaction:{}", command.getTransactionId());
+    /**
+     * Sends the commands as items of one message. Each item keeps the itemId of its own command so that
+     * the response items can be matched back to the command that sent them.
+     */
+    private void sendBatch(List<LightwaverfSmartRequest> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        LightwaverfSmartRequest first = batch.get(0);
+        if (batch.size() == 1) {
+            sendMessage(gson.toJson(first));
+            written(batch);
+            return;
+        }
+        List<LightwaverfSmartItem> items = new ArrayList<LightwaverfSmartItem>(batch.size());
+        for (LightwaverfSmartRequest command : batch) {
+            items.add(command.getItems().get(0));
+        }
+        LightwaverfSmartRequest message = new LightwaverfSmartRequest(first.getClass_(), first.getOperation(),
+                first.getDirection(), items);
+        message.setSenderId(uuid);
+        message.setTransactionId(first.getTransactionId());
+        logger.trace("Sending {} commands in transaction {}", batch.size(), first.getTransactionId());
+        sendMessage(gson.toJson(message));
+        written(batch);
+    }
+
+    /**
+     * Times the commands from when they were handed to the websocket rather than from when they were admitted
+     */
+    private void written(List<LightwaverfSmartRequest> batch) {
+        long timeout = rtt.getTimeoutNanos();
+        for (LightwaverfSmartRequest command : batch) {
+            transactions.written(command.getTransactionId(), timeout);
+        }
+    }
+
+    /**
+     * Retry or abandon transactions which haven't had a response within the timeout, and queue
+     * retries that have finished their backoff
+     */
+    private void expireTransactions() {
+        boolean timedOut = false;
+        for (LightwaverfSmartTransaction transaction : transactions.expire()) {
+            if (transaction.getStatus() == Status.QUEUED) {
+                logger.debug("Sending transaction {} again", transaction.getTransactionId());
+                queue.retry(transaction.getCommand());
+            } else {
+                logger.debug("Ok message not received for transaction: {}, for Device: {}",
+                        transaction.getTransactionId(), transaction.getKey());
+                if (!timedOut) {
+                    // Timeouts found on the same tick are one loss so the timeout is only backed off once
+                    rtt.backoff();
+                    timedOut = true;
                 }
+                retry(transaction);
             }
-        } catch (InterruptedException e) {
-            logger.error("Command manager threw an exception: {}", e.getMessage());
         }
     }
 
+    /**
+     * Schedules a failed transaction to be sent again after a backoff delay. The device keeps its place
+     * until the retry completes so its later commands stay in order, but the window slots are given up
+     * so other devices carry on while it waits.
+     */
+    private void retry(LightwaverfSmartTransaction transaction) {
+        retry(transaction, true);
+    }
+
+    /**
+     * @param backoff false to put the command back at the front of the queue straight away, used when it
+     *            failed because of the connection rather than the device
+     */
+    private void retry(LightwaverfSmartTransaction transaction, boolean backoff) {
+        slots.release(transaction.getPermits());
+        LightwaverfSmartRequest command = transaction.getCommand();
+        if (transaction.getAttempts() >= retries) {
+            transactions.remove(transaction);
+            releaseDevice(transaction);
+            logger.error(
+                    "Unable to send transaction {}, command value was {} : {} for Device: {}, after {} retry attempts",
+                    command.getTransactionId(), command.getItems().get(0).getPayload().getType(),
+                    command.getItems().get(0).getPayload().getValue(), transaction.getKey(),
+                    transaction.getAttempts());
+            return;
+        }
+        if (!running) {
+            transactions.remove(transaction);
+            releaseDevice(transaction);
+            if ("write".equals(command.getOperation()) && dispatcher != null) {
+                // Sent as the websocket dropped, it goes again after the next login
+                journalWrite(command);
+            } else {
+                logger.error("Not retrying transactionId {} as we are stopping", command.getTransactionId());
+            }
+            return;
+        }
+        if (!backoff) {
+            logger.debug("Sending transaction {} for Device: {} again", command.getTransactionId(),
+                    transaction.getKey());
+            transactions.requeue(transaction);
+            queue.retry(command);
+            return;
+        }
+        long delay = retryBackoff.next(transaction.getRetryDelay());
+        logger.error("Command for transaction: {}, for Device: {} failed, retrying in {}ms. Retry count {}",
+                command.getTransactionId(), transaction.getKey(), TimeUnit.NANOSECONDS.toMillis(delay),
+                transaction.getAttempts() + 1);
+        transactions.backoff(transaction, delay);
+    }
+
+    /**
+     * Frees the window slots held by a completed transaction
+     */
+    private void release(LightwaverfSmartTransaction transaction) {
+        releaseDevice(transaction);
+        slots.release(transaction.getPermits());
+    }
+
+    /**
+     * Puts any commands held back for the same device as the transaction to the front of the queue
+     * so they keep their order
+     */
+    private void releaseDevice(LightwaverfSmartTransaction transaction) {
+        Deque<LightwaverfSmartRequest> held;
+        synchronized (waiting) {
+            held = waiting.remove(transaction.getKey());
+        }
+        if (held != null) {
+            Iterator<LightwaverfSmartRequest> iterator = held.descendingIterator();
+            while (iterator.hasNext()) {
+                queue.addFirst(iterator.next());
+            }
+        }
+    }
+
+    private String getOrderingKey(LightwaverfSmartRequest command) {
+        if (command.getOperation().equals("authenticate")) {
+            return "authenticate";
+        }
+        String featureid = command.getItems().get(0).getPayload().getFeatureId();
+        if (featureid == null) {
+            return "";
+        }
+        LightwaverfSmartChannelTarget target = features.get(featureid);
+        return target != null ? target.getDeviceId() : featureid;
+    }
+
     public void okMessage(Integer itemid) {
         logger.debug("Ok Response received for sent Command, TransactionID: {}", itemid);
-        CountDownLatch latch = latchMap.get(itemid);
-        if (latch != null) {
-            latch.countDown();
+        LightwaverfSmartTransaction transaction = transactions.complete(itemid);
+        if (transaction != null) {
+            if (transaction.getAttempts() == 1) {
+                rtt.update(System.nanoTime() - transaction.getSentTime());
+            }
+            logger.trace("Ok message processed for transaction:{}", itemid);
+            release(transaction);
         }
     }
 
@@ -174,41 +564,235 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
         this.running = running;
     }
 
-    public void addDeviceListener(String deviceid, LightwaverfSmartDeviceListener listener) {
-        deviceListeners.put(deviceid, listener);
-        logger.debug("Added device listener for {}", deviceid);
-    }
-
-    public void removeDeviceListener(String deviceid) {
-        deviceListeners.remove(deviceid);
+    public void removeFeatures(String deviceid) {
+        features.values().removeIf(target -> target.getDeviceId().equals(deviceid));
+        logger.debug("Removed features for {}", deviceid);
     }
 
     public synchronized void queueCommand(LightwaverfSmartRequest command) {
-        try {
-            if (running) {
-                if (command.getOperation() == null) {
-                    logger.debug("Queueing Ping Command");
-                    queue.put(command);
-                    return;
-                }
-                command.setSenderId(uuid);
-                command.setTransactionId(transactionId);
-                command.getItems().get(0).setItemId(transactionId + "");
-                if (command.getOperation().equals("authenticate")) {
-                    logger.debug("Adding login command to the top of the queue");
-                    queue.putFirst(command);
-                } else {
-                    logger.trace("Adding command to the queue");
-                    messages.put(transactionId, command);
-                    queue.put(command);
-                }
-                transactionId++;
+        if (running) {
+            forgetState(command);
+            if (coalesceWrite(command)) {
+                return;
+            }
+            command.setSenderId(uuid);
+            command.setTransactionId(transactionId);
+            command.getItems().get(0).setItemId(transactionId + "");
+            if (command.getOperation().equals("authenticate")) {
+                logger.debug("Adding login command to the queue");
             } else {
-                logger.info("Message not added to queue as we are shutting down");
+                logger.trace("Adding command to the queue");
+                if (command.getOperation().equals("write")) {
+                    synchronized (pendingWrites) {
+                        pendingWrites.put(command.getItems().get(0).getPayload().getFeatureId(), command);
+                    }
+                }
+            }
+            offer(command);
+            transactionId++;
+        } else if ("write".equals(command.getOperation()) && dispatcher != null) {
+            forgetState(command);
+            journalWrite(command);
+        } else {
+            logger.info("Message not added to queue as we are shutting down");
+        }
+    }
+
+    /**
+     * A command for a feature means openHAB may no longer show the last value received so the next one
+     * must be published even if it hasn't changed
+     */
+    private void forgetState(LightwaverfSmartRequest command) {
+        String featureid = command.getItems().get(0).getPayload().getFeatureId();
+        if (featureid != null) {
+            LightwaverfSmartChannelTarget target = features.get(featureid);
+            if (target != null) {
+                target.forget();
+            }
+        }
+    }
+
+    /**
+     * Keeps the latest write for a feature while the websocket is offline
+     */
+    private void journalWrite(LightwaverfSmartRequest command) {
+        String featureid = command.getItems().get(0).getPayload().getFeatureId();
+        synchronized (journal) {
+            // Remove first so the feature moves to the end and writes replay in the order they were last made
+            journal.remove(featureid);
+            journal.put(featureid, command);
+        }
+        logger.debug("Websocket is offline, keeping the command for feature {} until it reconnects", featureid);
+    }
+
+    /**
+     * Moves the writes that were queued, held behind another command for the device or waiting on a
+     * response into the journal when the websocket disconnects, other commands that were sent are dropped
+     */
+    private synchronized void journalUnsent() {
+        List<LightwaverfSmartRequest> unsent = new ArrayList<LightwaverfSmartRequest>();
+        for (LightwaverfSmartTransaction transaction : transactions.drain()) {
+            if (transaction.getStatus() == Status.SENT) {
+                slots.release(transaction.getPermits());
+            }
+            unsent.add(transaction.getCommand());
+        }
+        synchronized (waiting) {
+            for (Deque<LightwaverfSmartRequest> held : waiting.values()) {
+                unsent.addAll(held);
+            }
+            waiting.clear();
+        }
+        unsent.addAll(queue.drain(LightwaverfSmartLane.WRITE));
+        // A new login is queued when the websocket connects again
+        queue.drain(LightwaverfSmartLane.AUTHENTICATE);
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+        }
+        // Oldest first so the latest write for each feature is the one kept
+        for (LightwaverfSmartRequest command : unsent) {
+            if ("write".equals(command.getOperation())) {
+                journalWrite(command);
+            }
+        }
+    }
+
+    /**
+     * Queues the writes made while the websocket was offline
+     */
+    private void replayJournal() {
+        List<LightwaverfSmartRequest> commands;
+        synchronized (journal) {
+            commands = new ArrayList<LightwaverfSmartRequest>(journal.values());
+            journal.clear();
+        }
+        if (commands.isEmpty()) {
+            return;
+        }
+        logger.debug("Sending {} commands made while the websocket was offline", commands.size());
+        for (LightwaverfSmartRequest command : commands) {
+            queueCommand(command);
+        }
+    }
+
+    private void offer(LightwaverfSmartRequest command) {
+        LightwaverfSmartRequest dropped = queue.offer(command);
+        if (dropped == command) {
+            logger.warn("Command for transaction {} not added as the queue is full", command.getTransactionId());
+            rejectedCommands.incrementAndGet();
+            discard(command);
+        } else if (dropped != null) {
+            logger.warn("Dropped command for transaction {} as the queue is full", dropped.getTransactionId());
+            droppedCommands.incrementAndGet();
+            discard(dropped);
+        }
+    }
+
+    /**
+     * @return true if the command has been queued for longer than its time to live
+     */
+    private boolean isExpired(LightwaverfSmartRequest command) {
+        if (!queue.isExpired(command)) {
+            return false;
+        }
+        logger.debug("Discarding command for transaction {} as it has been queued too long",
+                command.getTransactionId());
+        expiredCommands.incrementAndGet();
+        discard(command);
+        return true;
+    }
+
+    /**
+     * Cleans up after a command that has been taken out of the queue and won't be sent
+     */
+    private void discard(LightwaverfSmartRequest command) {
+        if ("write".equals(command.getOperation())) {
+            synchronized (pendingWrites) {
+                pendingWrites.remove(command.getItems().get(0).getPayload().getFeatureId(), command);
+            }
+        }
+        if (command.getTransactionId() != null) {
+            LightwaverfSmartTransaction transaction = transactions.get(command.getTransactionId());
+            if (transaction != null) {
+                transactions.remove(transaction);
+                releaseDevice(transaction);
+            }
+        }
+    }
+
+    /**
+     * Replaces the value of a write for the same feature that is still waiting in the queue
+     *
+     * @return true if the command was merged into the queued write and shouldn't be queued itself
+     */
+    private boolean coalesceWrite(LightwaverfSmartRequest command) {
+        if (!command.getOperation().equals("write")) {
+            return false;
+        }
+        LightwaverfSmartPayload payload = command.getItems().get(0).getPayload();
+        synchronized (pendingWrites) {
+            LightwaverfSmartRequest queued = pendingWrites.get(payload.getFeatureId());
+            if (queued == null) {
+                return false;
             }
-        } catch (InterruptedException e) {
-            logger.error("Error adding command to queue:{}", e.getMessage());
+            queued.getItems().get(0).getPayload().setValue(payload.getValue());
+            queued.setQueuedTime(System.nanoTime());
         }
+        logger.trace("Replaced queued write for feature {} with value {}", payload.getFeatureId(), payload.getValue());
+        coalescedWrites.incrementAndGet();
+        return true;
+    }
+
+    public long getCoalescedWrites() {
+        return coalescedWrites.get();
+    }
+
+    public long getResponseTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(rtt.getTimeoutNanos());
+    }
+
+    public long getRoundTripTime() {
+        return TimeUnit.NANOSECONDS.toMillis(rtt.getSmoothedRttNanos());
+    }
+
+    public long getDroppedCommands() {
+        return droppedCommands.get();
+    }
+
+    public long getRejectedCommands() {
+        return rejectedCommands.get();
+    }
+
+    public long getExpiredCommands() {
+        return expiredCommands.get();
+    }
+
+    public int getQueueDepth(LightwaverfSmartLane lane) {
+        return queue.size(lane);
+    }
+
+    public int getEventLaneCount() {
+        return eventLanes.getLaneCount();
+    }
+
+    public int getEventLaneDepth(int lane) {
+        return eventLanes.getDepth(lane);
+    }
+
+    public long getUnchangedUpdates() {
+        return unchangedUpdates.get();
+    }
+
+    public long getThrottledUpdates() {
+        return throttledUpdates.get();
+    }
+
+    public long getChangedUpdates() {
+        return changedUpdates.get();
+    }
+
+    public long getDroppedEvents() {
+        return eventLanes.getDroppedEvents();
     }
 
     public void sendLoginCommand() {
@@ -217,10 +801,58 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
         queueCommand(command);
     }
 
-    public void sendPing() {
-        logger.debug("Sending Ping Command");
-        LightwaverfSmartRequest command = new LightwaverfSmartRequest();
-        queueCommand(command);
+    /**
+     * Builds a login for a handover connection, which is sent directly rather than through the queue so
+     * commands keep flowing on the current connection while it logs in
+     */
+    public synchronized String getLoginMessage() {
+        LightwaverfSmartRequest command = new LightwaverfSmartRequest(token, this.deviceUuid);
+        command.setSenderId(uuid);
+        command.setTransactionId(transactionId);
+        command.getItems().get(0).setItemId(transactionId + "");
+        transactionId++;
+        return gson.toJson(command);
+    }
+
+    /**
+     * @return whether the login on a handover connection succeeded, or null if the message wasn't its response
+     */
+    public @Nullable Boolean getLoginResult(String message) {
+        LightwaverfSmartRequest response;
+        try {
+            response = gson.fromJson(message, LightwaverfSmartRequest.class);
+        } catch (JsonParseException e) {
+            logger.debug("Unable to parse handover message {}", message);
+            return null;
+        }
+        if (response == null || !"user".equals(response.getClass_())
+                || !"authenticate".equals(response.getOperation()) || response.getItems().isEmpty()) {
+            return null;
+        }
+        LightwaverfSmartItem item = response.getItems().get(0);
+        return response.getError() == null && item.getError() == null && Boolean.TRUE.equals(item.getSuccess());
+    }
+
+    /**
+     * Sends the commands sent before the given {@link System#nanoTime()} again straight away, used when the
+     * connection they were sent on is closed before their responses arrived
+     */
+    public void retryInFlightBefore(long nanos) {
+        List<LightwaverfSmartTransaction> stranded = transactions.failSentBefore(nanos);
+        // Newest first so the oldest ends up at the front of the queue
+        for (int i = stranded.size() - 1; i >= 0; i--) {
+            LightwaverfSmartTransaction transaction = stranded.get(i);
+            logger.debug("Response for transaction {} was lost with the previous connection",
+                    transaction.getTransactionId());
+            retry(transaction, false);
+        }
+    }
+
+    /**
+     * @return true while a command sent before the given {@link System#nanoTime()} is waiting on its response
+     */
+    public boolean hasInFlightBefore(long nanos) {
+        return transactions.hasSentBefore(nanos);
     }
 
     @Override
@@ -233,25 +865,143 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
         this.connected = connected;
         if (this.connected) {
             setRunning(true);
+            // Nothing but the login is sent until it succeeds
+            queue.setLoginsOnly(true);
             sendLoginCommand();
         } else {
             setRunning(false);
+            queue.setLoginsOnly(true);
+            journalUnsent();
         }
     }
 
     @Override
     public void onMessage(String message) {
         logger.trace("Message received: {}", message);
+        LightwaverfSmartEvent event = events.get();
+        try {
+            LightwaverfSmartEventDecoder.decode(message, event);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Unable to decode websocket message {}: {}", message, e.getMessage());
+            return;
+        }
+        // Feature events are by far the most common so are routed straight from the decoded event
+        if ("feature".equals(event.getClass_())) {
+            if (!event.hasError()) {
+                processFeatureEvent(event);
+                return;
+            }
+            if ("response".equals(event.getDirection())) {
+                processFeatureError(event);
+                return;
+            }
+        }
+        onOtherMessage(message);
+    }
+
+    private void processFeatureEvent(LightwaverfSmartEvent event) {
+        boolean response = "response".equals(event.getDirection());
+        for (int i = 0; i < event.getItemCount(); i++) {
+            LightwaverfSmartEvent.Item item = event.getItem(i);
+            if (item.hasError()) {
+                logger.debug("Websocket response for item {} was an error with code {} and message {}",
+                        item.getItemId(), item.getErrorCode(), item.getErrorMessage());
+                Integer transactionid = response ? getTransactionId(item) : null;
+                if (transactionid != null) {
+                    // Retry straight away rather than waiting for the timeout
+                    proccesUnsuccessfulMessage("feature", transactionid);
+                }
+                continue;
+            }
+            if (!item.hasPayload()) {
+                continue;
+            }
+            // Each item carries the id of the command that sent it
+            Integer transactionid = null;
+            if (response) {
+                transactionid = getTransactionId(item);
+                if (transactionid == null) {
+                    continue;
+                }
+            }
+            String featureid = item.getFeatureId();
+            if (featureid == null && transactionid != null) {
+                LightwaverfSmartTransaction request = transactions.get(transactionid);
+                if (request == null) {
+                    logger.error(" Cannot process update, message wasnt present");
+                    continue;
+                }
+                featureid = request.getCommand().getItems().get(0).getPayload().getFeatureId();
+            }
+            if (featureid == null) {
+                logger.error(" Cannot process update, unable to get the featureid");
+                continue;
+            }
+            if (transactionid != null) {
+                if (!item.getSuccess()) {
+                    proccesUnsuccessfulMessage("feature", transactionid);
+                    continue;
+                }
+                logger.debug("Command for transaction {} was sucessful", transactionid);
+                okMessage(transactionid);
+            }
+            LightwaverfSmartChannelTarget target = features.get(featureid);
+            if (target == null) {
+                logger.trace("Update for feature {} wasnt processed as there is no device present", featureid);
+                continue;
+            }
+            if (item.hasValue()) {
+                processDeviceEvent(target, item.getValue());
+            }
+        }
+    }
+
+    /**
+     * Fails every command answered by a feature response that was an error as a whole, so they are retried
+     * straight away rather than after their timeout
+     */
+    private void processFeatureError(LightwaverfSmartEvent event) {
+        logger.debug("Websocket response for transaction {} was an error", event.getTransactionId());
+        boolean matched = false;
+        for (int i = 0; i < event.getItemCount(); i++) {
+            Integer transactionid = getTransactionId(event.getItem(i));
+            if (transactionid != null) {
+                proccesUnsuccessfulMessage("feature", transactionid);
+                matched = true;
+            }
+        }
+        Integer transactionid = event.getTransactionId();
+        if (!matched && transactionid != null) {
+            // Without items only the command that the message's transaction is for can be matched
+            proccesUnsuccessfulMessage("feature", transactionid);
+        }
+    }
+
+    /**
+     * @return the transaction of the command a response item is for, from its item id
+     */
+    private @Nullable Integer getTransactionId(LightwaverfSmartEvent.Item item) {
+        String itemid = item.getItemId();
+        if (itemid == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(itemid);
+        } catch (NumberFormatException e) {
+            logger.debug("Websocket response had an invalid item id {}", itemid);
+            return null;
+        }
+    }
+
+    /**
+     * Less frequent messages such as logins are still bound to the full {@link LightwaverfSmartRequest}
+     */
+    private void onOtherMessage(String message) {
         LightwaverfSmartRequest response = gson.fromJson(message, LightwaverfSmartRequest.class);
         if (response != null) {
             String operation = response.getOperation();
-            String direction = response.getDirection();
             String class_ = response.getClass_();
 
-            // if(class_.equals("user") && operation.equals("authenticate") && ) {
-            //
-            // }
-
             if (response.getItems().get(0).getError() != null) {
                 logger.debug("Websocket response was an error with code {} and message {}",
                         response.getItems().get(0).getError().getCode(),
@@ -271,59 +1021,11 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
                 return;
             }
 
-            if (class_.equals("feature")) {
-                String deviceid = "";
-                for (int i = 0; i < response.getItems().size(); i++) {
-                    Integer transactionid = Integer.valueOf(response.getItems().get(i).getItemId());
-                    // Get the deviceid - lots of checking as theres a bug in the returned message from the websocket
-                    LightwaverfSmartPayload payload = response.getItems().get(i).getPayload();
-                    if (payload != null) {
-                        if (payload.getFeature() == null) {
-                            if (direction.equals("response")) {
-                                LightwaverfSmartRequest request = messages.get(transactionid);
-                                if (request != null) {
-                                    String featureid = request.getItems().get(i).getPayload().getFeatureId();
-                                    if (featureid != null) {
-                                        deviceid = featureMap.get(featureid);
-                                    } else {
-                                        logger.error(
-                                                " Cannot process update, unable to get device id from feature map");
-                                        return;
-                                    }
-                                } else {
-                                    logger.error(" Cannot process update, message wasnt present");
-                                }
-                            } else {
-                                deviceid = featureMap.get(payload.getFeatureId());
-                            }
-                        } else {
-                            deviceid = payload.getFeature().getDeviceId();
-                        }
-
-                        if (deviceid != null) {
-                            if (direction.equals("response")) {
-                                if (!response.getItems().get(i).getSuccess()) {
-                                    proccesUnsuccessfulMessage(class_, transactionid);
-                                } else {
-                                    logger.debug("Command for transaction {} was sucessful", transactionid);
-                                    okMessage(transactionid);
-                                    messages.remove(transactionid);
-                                    processDeviceEvent(deviceid, payload);
-                                }
-                            } else {
-                                processDeviceEvent(deviceid, payload);
-                            }
-                        }
-                    }
-                }
-                return;
-            }
-
             if (class_.equals("server") && operation.equals("closing")) {
                 logger.info(
                         "Closing existing connection at the server for connectionid {} as it wasnt closed correctly",
                         response.getItems().get(0).getPayload().getConnectionId());
-                listener.websocketConnected(false);
+                listener.websocketClosing();
                 return;
             }
 
@@ -331,26 +1033,61 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
         }
     }
 
-    public void processDeviceEvent(String deviceid, LightwaverfSmartPayload payload) {
-        String channelid = (payload.getChannel() + 1) + "#" + payload.getType();
-        Long value = payload.getValue();
-        String type = payload.getType();
-        LightwaverfSmartDeviceListener listener = deviceListeners.get(deviceid);
-        if (listener != null) {
-            State state = processState(type, value);
-            listener.updateChannel(channelid, state);
+    public void processDeviceEvent(LightwaverfSmartChannelTarget target, long value) {
+        if (target.getConverter() == null) {
             return;
         }
-        logger.warn("Command response for {} wasnt processed as there is no listener present", deviceid);
+        switch (target.offer(value, System.nanoTime(), forceUpdateInterval)) {
+            case PUBLISH:
+                changedUpdates.incrementAndGet();
+                publish(target, value);
+                break;
+            case UNCHANGED:
+                unchangedUpdates.incrementAndGet();
+                break;
+            case THROTTLED:
+                throttledUpdates.incrementAndGet();
+                break;
+            case SCHEDULE:
+                throttledUpdates.incrementAndGet();
+                ScheduledExecutorService scheduler = this.scheduler;
+                if (scheduler != null) {
+                    scheduler.schedule(() -> {
+                        Long trailing = target.trailing(System.nanoTime());
+                        if (trailing != null) {
+                            changedUpdates.incrementAndGet();
+                            publish(target, trailing);
+                        }
+                    }, target.getTrailingDelay(System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                break;
+        }
+    }
+
+    private void publish(LightwaverfSmartChannelTarget target, long value) {
+        LightwaverfSmartStateConverter converter = target.getConverter();
+        // Only one update for a channel waits in its lane at a time and it publishes the latest value when it runs,
+        // so a full lane can't hold back the last value for a channel that already has an update waiting
+        if (converter != null && target.offerUpdate(value)) {
+            boolean dispatched = eventLanes.dispatch(target.getDeviceId(), () -> {
+                long latest = target.takeUpdate();
+                target.getListener().updateChannel(target.getChannelUID(), converter.convert(latest));
+                ChannelUID costChannelUID = target.getCostChannelUID();
+                if (costChannelUID != null) {
+                    target.getListener().updateChannel(costChannelUID, new DecimalType(latest * costPerUnit));
+                }
+            });
+            if (!dispatched) {
+                target.cancelUpdate();
+            }
+        }
     }
 
     private void proccesUnsuccessfulMessage(String class_, Integer transactionid) {
         logger.info("Command response for transaction {} wasnt successful so we are sending again", transactionid);
-        LightwaverfSmartRequest command = messages.get(transactionid);
-        if (command != null) {
-            messages.remove(transactionid);
-            okMessage(transactionid);
-            queueCommand(command);
+        LightwaverfSmartTransaction transaction = transactions.fail(transactionid);
+        if (transaction != null) {
+            retry(transaction);
             return;
         }
         logger.info("Unable to re-queue command for transaction {} as it wasnt in the maessage list", transactionid);
@@ -362,144 +1099,42 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
         if (success) {
             this.connected = true;
             listener.websocketLoggedIn();
+            replayJournal();
+            queue.setLoginsOnly(false);
             return;
         }
         this.connected = false;
         listener.websocketConnected(false);
     }
 
-    private State processState(String channelType, long value) {
-        State state = OnOffType.ON;
-        switch (channelType) {
-            case "switch":
-            case "diagnostics":
-            case "outletInUse":
-            case "protection":
-            case "identify":
-            case "reset":
-            case "upgrade":
-            case "heatState":
-            case "callForHeat":
-            case "bulbSetup":
-            case "dimSetup":
-            case "valveSetup":
-            case "windowPosition":
-                if (value == 1) {
-                    state = OnOffType.ON;
-                } else {
-                    state = OnOffType.OFF;
-                }
-                break;
-            case "threeWayRelay":
-            case "periodOfBroadcast":
-            case "monthArray":
-            case "weekdayArray":
-                state = new StringType(String.valueOf(value));
-                break;
-            case "power":
-            case "batteryLevel":
-            case "rssi":
-                state = new DecimalType(value);
-                break;
-            case "timeZone":
-            case "day":
-            case "month":
-            case "year":
-            case "energy":
-                state = new DecimalType((value / 1000.0));
-
-                break;
-            case "temperature":
-            case "targetTemperature":
-            case "voltage":
-                state = new DecimalType((value / 10.0));
-                break;
-            case "dimLevel":
-            case "valveLevel":
-                state = new PercentType((int) value);
-                break;
-
-            case "rgbColor":
-                Color color = new Color((int) value);
-                int red = (color.getRed());
-                int green = (color.getGreen());
-                int blue = (color.getBlue());
-                float[] hsb = Color.RGBtoHSB(red, green, blue, null);
-                int hue = (int) Math.round(hsb[0] * 360);
-                int saturation = (int) Math.round(hsb[1] * 100);
-                int brightness = (int) Math.round(hsb[2] * 100);
-                String hsb1 = hue + "," + saturation + "," + brightness;
-                state = new HSBType(hsb1);
-                break;
+    public Boolean addFeature(String featureid, String deviceid, String type, ChannelUID channelUID,
+            @Nullable ChannelUID costChannelUID, LightwaverfSmartDeviceListener listener) {
+        LightwaverfSmartStateConverter converter = LightwaverfSmartStateConverters.get(type);
+        if (converter == null && unsupportedTypes.add(type)) {
+            logger.info("Feature type {} for device {} isnt supported so its updates will be ignored", type,
+                    deviceid);
+        }
+        return features.put(featureid, new LightwaverfSmartChannelTarget(deviceid, channelUID, costChannelUID,
+                listener, converter, throttles.get(type))) == null;
+    }
 
-            case "date":
-                String monthPad = "";
-                String dayPad = "";
-                String hex = Integer.toHexString((int) value);
-                int year = Integer.parseInt(hex.substring(0, 3), 16);
-                int month = Integer.parseInt(hex.substring(3, 4), 16);
-                int day = Integer.parseInt(hex.substring(4, 6), 16);
-                if (month < 10) {
-                    monthPad = "0";
-                }
-                if (day < 10) {
-                    dayPad = "0";
-                }
-                String dateValue = year + "-" + monthPad + month + "-" + dayPad + day + "T00:00:00.000+0000";
-                state = new DateTimeType(dateValue);
-                break;
-            case "currentTime":
-                // ZonedDateTime instant = Instant.ofEpochMilli(value * 1000).atZone(ZoneId.systemDefault());
-                state = new DateTimeType();
-                break;
-            case "duskTime":
-            case "dawnTime":
-            case "time":
-                String hoursPad = "";
-                String minsPad = "";
-                String secsPad = "";
-                int minutes = ((((int) value) / 60) % 60);
-                int hours = ((int) value / 3600);
-                int seconds = (((int) value) % 60);
-                if (hours < 10) {
-                    hoursPad = "0";
-                }
-                if (minutes < 10) {
-                    minsPad = "0";
-                }
-                if (seconds < 10) {
-                    secsPad = "0";
-                }
-                LocalDate now = LocalDate.now();
+    @Override
+    public void websocketLoggedIn() {
+        // na
+    }
 
-                String timeValue = now + "T" + hoursPad + hours + ":" + minsPad + minutes + ":" + secsPad + seconds;
-                state = new DateTimeType(timeValue);
-                break;
-            case "weekday":
-                if (value != 0) {
-                    state = new StringType(DayOfWeek.of((int) value).toString());
-                    break;
-                } else {
-                    break;
-                }
-            case "locationLongitude":
-            case "locationLatitude":
-                state = new StringType(new DecimalType(value / 1000000.0).toString());
-                break;
-        }
-        return state;
+    @Override
+    public void websocketClosing() {
+        // na
     }
 
-    public Boolean addFeature(String featureid, String deviceid) {
-        if (featureMap.containsKey(featureid)) {
-            return false;
-        }
-        featureMap.put(featureid, deviceid);
-        return true;
+    @Override
+    public void handoverConnected(Boolean connected) {
+        // na
     }
 
     @Override
-    public void websocketLoggedIn() {
+    public void onHandoverMessage(String message) {
         // na
     }
 
@@ -507,4 +1142,9 @@ public class LightwaverfSmartCommandManager implements Runnable, LightwaverfSmar
     public void sendMessage(String message) {
         listener.sendMessage(message);
     }
+
+    @Override
+    public void flushMessages() {
+        listener.flushMessages();
+    }
 }
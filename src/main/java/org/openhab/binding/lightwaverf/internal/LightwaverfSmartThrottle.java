@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link LightwaverfSmartThrottle} limits how often a type of channel is updated. A value is only published
+ * when it differs from the last one published by more than the deadband, and no more than once per interval.
+ * The settings can change when the account is restarted so the channels keep the same throttle.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartThrottle {
+
+    private final int scale;
+    private volatile long deadband;
+    private volatile long interval;
+
+    /**
+     * @param scale the number of raw websocket units in one unit of the channel
+     */
+    public LightwaverfSmartThrottle(int scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * @param deadband the change needed in the units of the channel, 0 to publish every change
+     * @param interval the minimum milliseconds between updates, 0 for no limit
+     */
+    public void configure(double deadband, int interval) {
+        this.deadband = Math.max(0, Math.round(deadband * scale));
+        this.interval = TimeUnit.MILLISECONDS.toNanos(Math.max(0, interval));
+    }
+
+    /**
+     * @return the deadband in raw websocket units
+     */
+    public long getDeadband() {
+        return deadband;
+    }
+
+    /**
+     * @return the minimum nanoseconds between updates
+     */
+    public long getInterval() {
+        return interval;
+    }
+}
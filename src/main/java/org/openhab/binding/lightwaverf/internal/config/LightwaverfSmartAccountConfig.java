@@ -24,6 +24,34 @@ public class LightwaverfSmartAccountConfig {
     public String password = "";
     public int electricityCost;
     public int retries;
-    public int delay;
+    public int retryDelay = 250;
+    public int maxRetryDelay = 30000;
     public int timeout;
+    public int minTimeout = 500;
+    public int maxTimeout = 10000;
+    public int window = 5;
+    public int batchSize = 10;
+    public int batchDelay = 5;
+    public int rate = 20;
+    public int burst = 20;
+    // Replaced by rate, still read from bridges set up before it so they keep their message spacing
+    public int delay;
+    public int queueSize = 500;
+    public String overflowPolicy = "dropOldest";
+    public int commandTtl = 30000;
+    public int forceUpdateInterval;
+    public double powerDeadband;
+    public int powerInterval;
+    public double energyDeadband;
+    public int energyInterval;
+    public double voltageDeadband;
+    public int voltageInterval;
+    public double temperatureDeadband;
+    public int temperatureInterval;
+    public double rssiDeadband;
+    public int rssiInterval;
+    public boolean compression = false;
+    public int compressionLevel = 6;
+    public int keepaliveInterval = 20;
+    public int keepaliveMissedPongs = 3;
 }
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.connections;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link LightwaverfSmartConnectionState} is the state of the connection to the websocket, it moves
+ * through each state in order and goes back to DISCONNECTED from any of them when the connection fails
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public enum LightwaverfSmartConnectionState {
+    /** Not connected, a reconnect may be scheduled */
+    DISCONNECTED,
+    /** Waiting for the websocket to connect */
+    CONNECTING,
+    /** Connected and waiting for the login response */
+    AUTHENTICATING,
+    /** Logged in and sending commands */
+    ONLINE
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.connections;
+
+import java.util.zip.Deflater;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
+
+/**
+ * The {@link LightwaverfSmartDeflateExtension} is the permessage-deflate extension with a configurable
+ * compression level. Jetty creates the extension from its class, the level is set by the decorator of the
+ * websocket client of each account.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartDeflateExtension extends PerMessageDeflateExtension {
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * @param level the deflate level from 0 (none) to 9 (best)
+     */
+    public void setLevel(int level) {
+        this.level = Math.max(Deflater.NO_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, level));
+    }
+
+    @Override
+    public Deflater getDeflater() {
+        Deflater deflater = super.getDeflater();
+        deflater.setLevel(level);
+        return deflater;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.connections;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link LightwaverfSmartLatencyHistogram} counts round trip times in buckets that double in size from
+ * 1 ms, so recording is a couple of atomic increments and percentiles are accurate to within their bucket.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartLatencyHistogram {
+
+    // Bucket 0 is under 1 ms, bucket i is from 2^(i-1) ms up to 2^i ms and the last bucket holds anything longer
+    private static final int BUCKETS = 18;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, nanos));
+        counts.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis)));
+        count.incrementAndGet();
+        max.accumulateAndGet(millis, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMillis() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the upper bound in ms of the bucket holding the percentile, limited to the largest time recorded,
+     *         or 0 if nothing has been recorded
+     */
+    public long getPercentileMillis(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(1L << i, max.get());
+            }
+        }
+        return max.get();
+    }
+}
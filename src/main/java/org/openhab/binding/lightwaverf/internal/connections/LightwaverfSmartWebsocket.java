@@ -12,19 +12,34 @@
  */
 package org.openhab.binding.lightwaverf.internal.connections;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.util.Decorator;
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketFrame;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.jetty.websocket.common.LogicalConnection;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.common.io.AbstractWebSocketConnection;
+import org.eclipse.jetty.websocket.common.io.FrameFlusher;
 import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartListener;
 import org.openhab.core.io.net.http.WebSocketFactory;
 import org.slf4j.Logger;
@@ -44,15 +59,166 @@ public class LightwaverfSmartWebsocket {
     private final WebSocketClient webSocketClient;
     private final LightwaverfSmartListener listener;
     private final String url = "wss://v1-linkplus-app.lightwaverf.com";
+    /** The connection is closed if nothing is received for this long, the keepalive has to ping more often */
+    public static final int IDLE_TIMEOUT_MILLIS = 75000;
+    /** Longest time a message is held back to be written along with the next ones */
+    private static final long FLUSH_LINGER_MICROS = 200;
 
     private Boolean connected = false;
     private Boolean closing = false;
 
-    private @Nullable Session session;
+    // Commands are sent on session, a handover connects pendingSession and the old session drains after it
+    private volatile @Nullable Session session;
+    private volatile @Nullable Session pendingSession;
+    private volatile @Nullable Session drainingSession;
+    private boolean handover = false;
+    // Set while start() is waiting for its session, a session connecting at any other time is closed
+    private boolean connecting = false;
+    private boolean compression = false;
+    private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    // Bytes of the json messages and of the frames on the connection, which are smaller when compressed
+    private final AtomicLong messageBytesIn = new AtomicLong();
+    private final AtomicLong messageBytesOut = new AtomicLong();
+    private final AtomicLong frameBytesIn = new AtomicLong();
+    private final AtomicLong frameBytesOut = new AtomicLong();
+    // Keepalive pings carry the time they were sent so the pong gives the round trip time
+    private final LightwaverfSmartLatencyHistogram pingLatency = new LightwaverfSmartLatencyHistogram();
+    private final AtomicLong totalMissedPongs = new AtomicLong();
+    private long pingSent;
+    private boolean awaitingPong = false;
+    private int missedPongs = 0;
+    // Messages are written in batch mode and only go out on the connection when flushed. The lock is held
+    // while a message is written so that promote() can't move the session between the write and its count.
+    private final Object writeLock = new Object();
+    private @Nullable Session unflushedSession;
+    private int unflushed = 0;
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final WriteCallback writeCallback = new WriteCallback() {
+        @Override
+        public void writeSuccess() {
+            // na
+        }
+
+        @Override
+        public void writeFailed(@Nullable Throwable e) {
+            failedWrites.incrementAndGet();
+            String errorMessage = "unknown";
+            if (e != null) {
+                errorMessage = e.getMessage() != null ? e.getMessage() : "unknown";
+            }
+            logger.warn("LightwaveRF - Websocket message sending failed with reason: {}", errorMessage);
+        }
+    };
 
     public LightwaverfSmartWebsocket(WebSocketFactory webSocketFactory, LightwaverfSmartListener listener) {
         this.listener = listener;
         this.webSocketClient = webSocketFactory.createWebSocketClient("lightwaverf");
+        // Jetty creates the extensions itself, each client sets the level of its own
+        this.webSocketClient.getObjectFactory().addDecorator(new Decorator() {
+            @Override
+            public <T> T decorate(T o) {
+                if (o instanceof LightwaverfSmartDeflateExtension) {
+                    ((LightwaverfSmartDeflateExtension) o).setLevel(compressionLevel);
+                }
+                return o;
+            }
+
+            @Override
+            public void destroy(@Nullable Object o) {
+                // na
+            }
+        });
+    }
+
+    /**
+     * @param compression true to ask the server for permessage-deflate
+     * @param level the deflate level from 0 (none) to 9 (best)
+     */
+    public void setCompression(boolean compression, int level) {
+        this.compression = compression;
+        this.compressionLevel = level;
+    }
+
+    public long getMessageBytesIn() {
+        return messageBytesIn.get();
+    }
+
+    public long getMessageBytesOut() {
+        return messageBytesOut.get();
+    }
+
+    public long getFrameBytesIn() {
+        AbstractWebSocketConnection connection = getConnection(session);
+        return frameBytesIn.get() + (connection != null ? connection.getBytesIn() : 0);
+    }
+
+    public long getFrameBytesOut() {
+        AbstractWebSocketConnection connection = getConnection(session);
+        return frameBytesOut.get() + (connection != null ? connection.getBytesOut() : 0);
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    public LightwaverfSmartLatencyHistogram getPingLatency() {
+        return pingLatency;
+    }
+
+    public long getMissedPongs() {
+        return totalMissedPongs.get();
+    }
+
+    /**
+     * Sends a ping control frame, which goes out ahead of any queued commands
+     *
+     * @return the number of pings in a row that haven't had a pong, not counting this one
+     */
+    public int sendPing() {
+        Session session = this.session;
+        if (!connected || session == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        int missed;
+        synchronized (this) {
+            if (awaitingPong) {
+                missedPongs++;
+                totalMissedPongs.incrementAndGet();
+            }
+            missed = missedPongs;
+            awaitingPong = true;
+            pingSent = now;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES);
+        payload.putLong(0, now);
+        try {
+            session.getRemote().sendPing(payload);
+            flush(session);
+        } catch (IOException e) {
+            logger.debug("LightwaveRF - Unable to send websocket ping: {}", e.getMessage());
+        }
+        return missed;
+    }
+
+    private synchronized void resetPong() {
+        awaitingPong = false;
+        missedPongs = 0;
+    }
+
+    private static @Nullable AbstractWebSocketConnection getConnection(@Nullable Session session) {
+        if (session instanceof WebSocketSession) {
+            LogicalConnection connection = ((WebSocketSession) session).getConnection();
+            if (connection instanceof AbstractWebSocketConnection) {
+                return (AbstractWebSocketConnection) connection;
+            }
+        }
+        return null;
     }
 
     public Boolean getConnected() {
@@ -62,38 +228,134 @@ public class LightwaverfSmartWebsocket {
     public void setConnected(Boolean connected) {
         this.connected = connected;
         if (!connected) {
-            Session session = this.session;
-            if (session != null) {
-                session.close();
+            synchronized (this) {
+                connecting = false;
+            }
+            Session session;
+            synchronized (writeLock) {
+                session = this.session;
                 this.session = null;
+                takeUnflushed();
             }
+            retire(session);
+            abandonHandover();
+            closeDraining();
+        }
+    }
+
+    /**
+     * Closes a session that is no longer used, keeping the totals of its connection
+     */
+    private void retire(@Nullable Session session) {
+        if (session != null) {
+            AbstractWebSocketConnection connection = getConnection(session);
+            if (connection != null) {
+                frameBytesIn.addAndGet(connection.getBytesIn());
+                frameBytesOut.addAndGet(connection.getBytesOut());
+            }
+            session.close();
         }
     }
 
     public synchronized void start() {
         try {
-            if (!webSocketClient.isStarted()) {
-                webSocketClient.start();
-                logger.debug("Started websocket client");
-            }
             closing = false;
-            ClientUpgradeRequest request = new ClientUpgradeRequest();
-            URI uri = new URI(url);
-
-            webSocketClient.setConnectTimeout(1000);
-
-            webSocketClient.setAsyncWriteTimeout(5000);
-            // make sure our message buffer is large enough
-            webSocketClient.setMaxTextMessageBufferSize(1024 * 1024);
-            // if the websocket doesnt receive any data then it disconnects
-            webSocketClient.setMaxIdleTimeout(75000);
-            webSocketClient.connect(this, uri, request);
+            connecting = true;
+            connect();
         } catch (Exception e) {
             setConnected(false);
             listener.websocketConnected(false);
         }
     }
 
+    /**
+     * Opens a second session alongside the current one, the listener is told when it connects so it can log in
+     * before {@link #promote()} moves commands over to it
+     */
+    public void startHandover() {
+        synchronized (this) {
+            if (handover || pendingSession != null) {
+                return;
+            }
+            try {
+                handover = true;
+                connect();
+                return;
+            } catch (Exception e) {
+                handover = false;
+            }
+        }
+        listener.handoverConnected(false);
+    }
+
+    private void connect() throws Exception {
+        if (!webSocketClient.isStarted()) {
+            webSocketClient.start();
+            logger.debug("Started websocket client");
+        }
+        ClientUpgradeRequest request = new ClientUpgradeRequest();
+        if (compression) {
+            webSocketClient.getExtensionFactory().register("permessage-deflate",
+                    LightwaverfSmartDeflateExtension.class);
+            request.addExtensions("permessage-deflate");
+        }
+        URI uri = new URI(url);
+
+        webSocketClient.setConnectTimeout(1000);
+
+        webSocketClient.setAsyncWriteTimeout(5000);
+        // make sure our message buffer is large enough
+        webSocketClient.setMaxTextMessageBufferSize(1024 * 1024);
+        // if the websocket doesnt receive any data then it disconnects
+        webSocketClient.setMaxIdleTimeout(IDLE_TIMEOUT_MILLIS);
+        webSocketClient.connect(this, uri, request);
+    }
+
+    /**
+     * Sends new messages on the logged in handover session, the previous session is kept open so the responses
+     * to commands already sent on it still arrive until {@link #closeDraining()}
+     *
+     * @return false if there wasn't a handover session
+     */
+    public synchronized boolean promote() {
+        Session pending = this.pendingSession;
+        if (pending == null) {
+            return false;
+        }
+        closeDraining();
+        @Nullable
+        Session previous;
+        boolean written;
+        synchronized (writeLock) {
+            previous = this.session;
+            this.session = pending;
+            this.pendingSession = null;
+            written = takeUnflushed() != null;
+        }
+        this.drainingSession = previous;
+        // Anything written before the swap goes out on the previous session
+        if (written) {
+            flush(previous);
+        }
+        // A ping sent on the previous session is answered there
+        resetPong();
+        logger.debug("LightwaveRF - Moved commands to the new WebSocket");
+        return true;
+    }
+
+    public synchronized void abandonHandover() {
+        handover = false;
+        Session pending = this.pendingSession;
+        this.pendingSession = null;
+        retire(pending);
+    }
+
+    public synchronized void closeDraining() {
+        Session draining = this.drainingSession;
+        this.drainingSession = null;
+        retire(draining);
+    }
+
     public void stop() {
         closing = true;
         logger.debug("Stopping websocket client");
@@ -108,7 +370,44 @@ public class LightwaverfSmartWebsocket {
 
     @OnWebSocketConnect
     public void onConnect(Session session) {
-        this.session = session;
+        session.getRemote().setBatchMode(BatchMode.ON);
+        boolean pending;
+        boolean expected;
+        @Nullable
+        Session previous = null;
+        synchronized (this) {
+            pending = handover;
+            expected = connecting;
+            if (pending) {
+                handover = false;
+                pendingSession = session;
+            } else if (expected) {
+                connecting = false;
+                synchronized (writeLock) {
+                    previous = this.session;
+                    this.session = session;
+                    // Anything still batched on the previous session is lost when it's retired
+                    takeUnflushed();
+                }
+            }
+        }
+        // The listener is called outside the lock as it may start or abandon a handover
+        if (pending) {
+            logger.debug("LightwaveRF - Handover WebSocket connected to {}", session.getRemoteAddress().getAddress());
+            listener.handoverConnected(true);
+            return;
+        }
+        if (!expected) {
+            // The attempt timed out or was stopped, so nothing would read from this session
+            logger.debug("LightwaveRF - Closing WebSocket to {} as it connected after its attempt ended",
+                    session.getRemoteAddress().getAddress());
+            session.close();
+            return;
+        }
+        if (previous != null && previous != session) {
+            retire(previous);
+        }
+        resetPong();
         setConnected(true);
         listener.websocketConnected(true);
         logger.debug("LightwaveRF - WebSocket Socket successfully connected to {}",
@@ -116,19 +415,68 @@ public class LightwaverfSmartWebsocket {
     }
 
     @OnWebSocketMessage
-    public void onMessage(String message) {
-        listener.onMessage(message);
+    public void onMessage(Session session, String message) {
+        messageBytesIn.addAndGet(utf8Length(message));
+        if (session == pendingSession) {
+            listener.onHandoverMessage(message);
+        } else {
+            listener.onMessage(message);
+        }
+    }
+
+    @OnWebSocketFrame
+    public void onFrame(Session session, Frame frame) {
+        if (frame.getType() != Frame.Type.PONG || session != this.session) {
+            return;
+        }
+        ByteBuffer payload = frame.getPayload();
+        if (payload == null || payload.remaining() != Long.BYTES) {
+            return;
+        }
+        long sent = payload.getLong(payload.position());
+        synchronized (this) {
+            if (!awaitingPong || sent != pingSent) {
+                return;
+            }
+            awaitingPong = false;
+            missedPongs = 0;
+        }
+        long rtt = System.nanoTime() - sent;
+        pingLatency.record(rtt);
+        logger.trace("LightwaveRF - Websocket pong after {} us", rtt / 1000);
     }
 
     @OnWebSocketClose
-    public void onClose(int statusCode, String reason) {
-        logger.warn("LightwaveRF - Closing a WebSocket due to {}", closing ? "binding shutting down" : reason);
-        setConnected(false);
-        listener.websocketConnected(false);
+    public void onClose(Session session, int statusCode, String reason) {
+        if (session == this.session) {
+            disconnected(reason);
+        } else if (session == pendingSession) {
+            logger.debug("LightwaveRF - Handover WebSocket closed due to {}", reason);
+            abandonHandover();
+            listener.handoverConnected(false);
+        } else {
+            // A session closed by setConnected(false) or after draining has already been handled
+            logger.debug("LightwaveRF - Previous WebSocket closed due to {}", reason);
+        }
     }
 
     @OnWebSocketError
-    public void onError(Throwable cause) {
+    public void onError(@Nullable Session session, Throwable cause) {
+        boolean pending;
+        synchronized (this) {
+            // Either the handover session failed or it couldn't connect
+            pending = (session != null && session == pendingSession) || (session == null && handover);
+        }
+        if (pending) {
+            logger.debug("LightwaveRF - Handover WebSocket error {}", cause.getMessage());
+            abandonHandover();
+            listener.handoverConnected(false);
+            return;
+        }
+        if (session != null && this.session != null && session != this.session) {
+            logger.debug("LightwaveRF - Previous WebSocket error {}", cause.getMessage());
+            return;
+        }
         String reason = cause.getMessage();
         logger.error("Websocket Error, Please Enable Trace Logging to see the full error");
         StackTraceElement[] array = cause.getStackTrace();
@@ -136,36 +484,111 @@ public class LightwaverfSmartWebsocket {
             logger.trace("{}", traceElement);
         }
         if (reason != null) {
-            onClose(0, reason);
+            disconnected(reason);
         } else {
-            onClose(0, "");
+            disconnected("");
         }
     }
 
+    private void disconnected(String reason) {
+        logger.warn("LightwaveRF - Closing a WebSocket due to {}", closing ? "binding shutting down" : reason);
+        setConnected(false);
+        listener.websocketConnected(false);
+    }
+
     public void sendMessage(String message) {
-        if (connected) {
-            logger.debug("Sending message: {}", message);
+        if (!connected) {
+            logger.debug("Websocket is unable to send the message as its disconnected {}", message);
+            return;
+        }
+        boolean first;
+        synchronized (writeLock) {
             Session session = this.session;
-            if (session != null) {
-                session.getRemote().sendString(message, new WriteCallback() {
-                    @Override
-                    public void writeSuccess() {
-                        logger.debug("LightwaveRF - Websocket message sending completed: {}", message);
-                    }
-
-                    @Override
-                    public void writeFailed(@Nullable Throwable e) {
-                        String errorMessage = "unknown";
-                        if (e != null) {
-                            errorMessage = e.getMessage() != null ? e.getMessage() : "unknown";
-                        }
-                        logger.warn("LightwaveRF - Websocket message sending failed: {} with reason: {}", message,
-                                errorMessage);
-                    }
-                });
+            if (session == null) {
+                return;
+            }
+            send(session, message);
+            first = unflushed++ == 0;
+            unflushedSession = session;
+        }
+        // The first message of a burst makes sure it's written even if the dispatcher doesn't flush it
+        if (first) {
+            webSocketClient.getScheduler().schedule(this::flush, FLUSH_LINGER_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Sends a message on the handover session, used to log in before it is promoted
+     */
+    public void sendHandoverMessage(String message) {
+        Session pending = this.pendingSession;
+        send(pending, message);
+        flush(pending);
+    }
+
+    private void send(@Nullable Session session, String message) {
+        logger.trace("Sending message: {}", message);
+        if (session != null) {
+            messageBytesOut.addAndGet(utf8Length(message));
+            session.getRemote().sendString(message, writeCallback);
+        }
+    }
+
+    /**
+     * Writes out the messages batched since the last flush, called when the dispatcher has nothing more
+     * to send straight away
+     */
+    public void flush() {
+        Session session;
+        synchronized (writeLock) {
+            session = takeUnflushed();
+        }
+        flush(session);
+    }
+
+    /**
+     * @return the session messages were written on since the last flush, null if there weren't any
+     */
+    private @Nullable Session takeUnflushed() {
+        Session session = unflushed > 0 ? unflushedSession : null;
+        unflushed = 0;
+        unflushedSession = null;
+        return session;
+    }
+
+    /**
+     * Writes out the messages batched on a session without waiting for the write to complete, as this is
+     * called from the websocket client's scheduler which is shared with the rest of the client
+     */
+    private void flush(@Nullable Session session) {
+        if (session == null) {
+            return;
+        }
+        RemoteEndpoint remote = session.getRemote();
+        flushes.incrementAndGet();
+        if (remote instanceof WebSocketRemoteEndpoint) {
+            // This is the frame RemoteEndpoint.flush() sends before blocking on its callback
+            ((WebSocketRemoteEndpoint) remote).uncheckedSendFrame(FrameFlusher.FLUSH_FRAME, writeCallback);
+            return;
+        }
+        try {
+            remote.flush();
+        } catch (IOException e) {
+            logger.debug("LightwaveRF - Unable to flush websocket messages: {}", e.getMessage());
+        }
+    }
+
+    private static int utf8Length(String message) {
+        int length = message.length();
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c >= 0x800) {
+                // Surrogate pairs are 4 bytes in total, 2 for each half
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
             }
-        } else {
-            logger.debug("Websocket is unable to send the message as its disconnected {}", message);
         }
+        return length;
     }
 }
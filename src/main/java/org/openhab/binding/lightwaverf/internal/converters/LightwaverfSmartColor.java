@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.converters;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.PercentType;
+
+/**
+ * The {@link LightwaverfSmartColor} converts between the 24 bit rgb value used by the websocket and
+ * {@link HSBType} using integer maths only, so java.awt isn't needed.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartColor {
+
+    // 100% saturation * 100% brightness * 60 degrees per sector
+    private static final long SCALE = 100L * 100 * 60;
+
+    /**
+     * @param rgb the colour as 0xRRGGBB
+     * @return the colour with a hue in whole degrees and saturation and brightness in whole percent
+     */
+    public static HSBType toHSB(int rgb) {
+        int red = (rgb >> 16) & 0xFF;
+        int green = (rgb >> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+        int max = Math.max(red, Math.max(green, blue));
+        int delta = max - Math.min(red, Math.min(green, blue));
+        int brightness = divideRounded(max * 100, 255);
+        int saturation = max == 0 ? 0 : divideRounded(delta * 100, max);
+        int hue = 0;
+        if (delta != 0) {
+            if (max == red) {
+                hue = divideRounded(60 * (green - blue), delta);
+            } else if (max == green) {
+                hue = 120 + divideRounded(60 * (blue - red), delta);
+            } else {
+                hue = 240 + divideRounded(60 * (red - green), delta);
+            }
+            hue = Math.floorMod(hue, 360);
+        }
+        return new HSBType(new DecimalType(hue), new PercentType(saturation), new PercentType(brightness));
+    }
+
+    /**
+     * @param hue the hue in degrees, 0 to 359
+     * @param saturation the saturation in percent, 0 to 100
+     * @param brightness the brightness in percent, 0 to 100
+     * @return the colour as 0xRRGGBB
+     */
+    public static int toRGB(int hue, int saturation, int brightness) {
+        hue = Math.floorMod(hue, 360);
+        saturation = Math.max(0, Math.min(100, saturation));
+        brightness = Math.max(0, Math.min(100, brightness));
+        // Each component is worked out as a multiple of 1 / SCALE of 255 then rounded
+        long max = 255L * brightness * 100 * 60;
+        long chroma = 255L * brightness * saturation * 60;
+        long mid = 255L * brightness * saturation * (60 - Math.abs(hue % 120 - 60));
+        long min = max - chroma;
+        long red;
+        long green;
+        long blue;
+        switch (hue / 60) {
+            case 0:
+                red = max;
+                green = min + mid;
+                blue = min;
+                break;
+            case 1:
+                red = min + mid;
+                green = max;
+                blue = min;
+                break;
+            case 2:
+                red = min;
+                green = max;
+                blue = min + mid;
+                break;
+            case 3:
+                red = min;
+                green = min + mid;
+                blue = max;
+                break;
+            case 4:
+                red = min + mid;
+                green = min;
+                blue = max;
+                break;
+            default:
+                red = max;
+                green = min;
+                blue = min + mid;
+        }
+        return (scale(red) << 16) | (scale(green) << 8) | scale(blue);
+    }
+
+    private static int scale(long component) {
+        return (int) ((component + SCALE / 2) / SCALE);
+    }
+
+    private static int divideRounded(int dividend, int divisor) {
+        return Math.floorDiv(2 * dividend + divisor, 2 * divisor);
+    }
+}
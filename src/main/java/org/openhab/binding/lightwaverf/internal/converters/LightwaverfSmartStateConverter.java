@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.converters;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link LightwaverfSmartStateConverter} turns the raw value of a feature into the state of its channel
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+@FunctionalInterface
+public interface LightwaverfSmartStateConverter {
+
+    /**
+     * @param value the value received from the websocket
+     * @return the state for the channel
+     */
+    State convert(long value);
+}
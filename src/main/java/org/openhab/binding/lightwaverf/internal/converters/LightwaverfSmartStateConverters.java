@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.converters;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * The {@link LightwaverfSmartStateConverters} holds the converter for each feature type so it can be looked up
+ * once when a feature is added rather than for every message received.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartStateConverters {
+
+    private static final Map<String, LightwaverfSmartStateConverter> CONVERTERS = new HashMap<>();
+    private static final long SECONDS_PER_DAY = 86400;
+    private static volatile Today today = new Today(ZoneId.systemDefault(), System.currentTimeMillis());
+
+    static {
+        register(value -> value == 1 ? OnOffType.ON : OnOffType.OFF, "switch", "diagnostics", "outletInUse",
+                "protection", "identify", "reset", "upgrade", "heatState", "callForHeat", "bulbSetup", "dimSetup",
+                "valveSetup", "windowPosition");
+        register(value -> new StringType(String.valueOf(value)), "threeWayRelay", "periodOfBroadcast", "monthArray",
+                "weekdayArray");
+        register(value -> new DecimalType(value), "power", "batteryLevel", "rssi");
+        register(value -> new DecimalType(value / 1000.0), "timeZone", "day", "month", "year", "energy");
+        register(value -> new DecimalType(value / 10.0), "temperature", "targetTemperature", "voltage");
+        register(value -> new PercentType((int) value), "dimLevel", "valveLevel");
+        register(value -> LightwaverfSmartColor.toHSB((int) value), "rgbColor");
+        register(LightwaverfSmartStateConverters::toDate, "date");
+        // ZonedDateTime instant = Instant.ofEpochMilli(value * 1000).atZone(ZoneId.systemDefault());
+        register(value -> new DateTimeType(), "currentTime");
+        register(LightwaverfSmartStateConverters::toTime, "duskTime", "dawnTime", "time");
+        register(value -> value != 0 ? new StringType(DayOfWeek.of((int) value).toString()) : UnDefType.UNDEF,
+                "weekday");
+        register(value -> new StringType(new DecimalType(value / 1000000.0).toString()), "locationLongitude",
+                "locationLatitude");
+    }
+
+    private static void register(LightwaverfSmartStateConverter converter, String... types) {
+        for (String type : types) {
+            CONVERTERS.put(type, converter);
+        }
+    }
+
+    /**
+     * @param type the feature type
+     * @return the converter for the feature type or null if it isn't supported
+     */
+    public static @Nullable LightwaverfSmartStateConverter get(String type) {
+        return CONVERTERS.get(type);
+    }
+
+    /**
+     * The date is sent as 0xYYYMDD, the year in the top bits then 4 bits for the month and 8 for the day
+     */
+    private static State toDate(long value) {
+        int year = (int) (value >> 12);
+        int month = (int) ((value >> 8) & 0xF);
+        int day = (int) (value & 0xFF);
+        try {
+            return new DateTimeType(ZonedDateTime.of(year, month, day, 0, 0, 0, 0, ZoneOffset.UTC));
+        } catch (DateTimeException e) {
+            return UnDefType.UNDEF;
+        }
+    }
+
+    /**
+     * The time is sent as the number of seconds since midnight and shown on today's date
+     */
+    private static State toTime(long value) {
+        LocalTime time = LocalTime.ofSecondOfDay(Math.floorMod(value, SECONDS_PER_DAY));
+        Today today = getToday();
+        return new DateTimeType(ZonedDateTime.of(today.date, time, today.zone));
+    }
+
+    private static Today getToday() {
+        Today today = LightwaverfSmartStateConverters.today;
+        long now = System.currentTimeMillis();
+        if (now >= today.end) {
+            today = new Today(ZoneId.systemDefault(), now);
+            LightwaverfSmartStateConverters.today = today;
+        }
+        return today;
+    }
+
+    /**
+     * Today's date kept until midnight so it isn't worked out for every update
+     */
+    private static class Today {
+        private final ZoneId zone;
+        private final LocalDate date;
+        private final long end;
+
+        Today(ZoneId zone, long now) {
+            this.zone = zone;
+            this.date = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+            this.end = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+    }
+}
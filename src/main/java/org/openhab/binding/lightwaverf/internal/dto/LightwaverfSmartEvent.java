@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.dto;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link LightwaverfSmartEvent} holds the fields of a websocket message that are needed to route it,
+ * filled in by the {@link LightwaverfSmartEventDecoder}. It is reset and reused for each message so only
+ * the items array grows, use {@link LightwaverfSmartRequest} for messages that need everything.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartEvent {
+
+    @Nullable
+    String classType;
+    @Nullable
+    String operation;
+    @Nullable
+    String direction;
+    @Nullable
+    Integer transactionId;
+    boolean error;
+    private Item[] items = new Item[] { new Item() };
+    private int itemCount;
+
+    void reset() {
+        classType = null;
+        operation = null;
+        direction = null;
+        transactionId = null;
+        error = false;
+        itemCount = 0;
+    }
+
+    Item nextItem() {
+        if (itemCount == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+            for (int i = itemCount; i < items.length; i++) {
+                items[i] = new Item();
+            }
+        }
+        Item item = items[itemCount++];
+        item.reset();
+        return item;
+    }
+
+    public @Nullable String getClass_() {
+        return classType;
+    }
+
+    public @Nullable String getOperation() {
+        return operation;
+    }
+
+    public @Nullable String getDirection() {
+        return direction;
+    }
+
+    public @Nullable Integer getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * @return true if the message had an error for the whole message
+     */
+    public boolean hasError() {
+        return error;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public Item getItem(int index) {
+        return items[index];
+    }
+
+    /**
+     * An item of the message along with the parts of its payload used for feature events
+     */
+    @NonNullByDefault
+    public static class Item {
+        @Nullable
+        String itemId;
+        boolean success;
+        boolean error;
+        @Nullable
+        Integer errorCode;
+        @Nullable
+        String errorMessage;
+        boolean payload;
+        @Nullable
+        String featureId;
+        long value;
+        boolean hasValue;
+
+        void reset() {
+            itemId = null;
+            success = false;
+            error = false;
+            errorCode = null;
+            errorMessage = null;
+            payload = false;
+            featureId = null;
+            value = 0;
+            hasValue = false;
+        }
+
+        public @Nullable String getItemId() {
+            return itemId;
+        }
+
+        public boolean getSuccess() {
+            return success;
+        }
+
+        public boolean hasError() {
+            return error;
+        }
+
+        public @Nullable Integer getErrorCode() {
+            return errorCode;
+        }
+
+        public @Nullable String getErrorMessage() {
+            return errorMessage;
+        }
+
+        public boolean hasPayload() {
+            return payload;
+        }
+
+        public @Nullable String getFeatureId() {
+            return featureId;
+        }
+
+        public boolean hasValue() {
+            return hasValue;
+        }
+
+        public long getValue() {
+            return value;
+        }
+    }
+}
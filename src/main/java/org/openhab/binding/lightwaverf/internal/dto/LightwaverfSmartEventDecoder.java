@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.dto;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartEvent.Item;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The {@link LightwaverfSmartEventDecoder} reads a websocket message straight into a reused
+ * {@link LightwaverfSmartEvent} with a streaming {@link JsonReader}, skipping everything that
+ * isn't needed to route feature events rather than building the full {@link LightwaverfSmartRequest}.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartEventDecoder {
+
+    /**
+     * @param message the websocket message
+     * @param event the event to fill in, any previous content is cleared
+     * @throws IOException if the message isn't valid json
+     */
+    public static void decode(String message, LightwaverfSmartEvent event) throws IOException {
+        event.reset();
+        JsonReader reader = new JsonReader(new StringReader(message));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "class":
+                    event.classType = nextString(reader);
+                    break;
+                case "operation":
+                    event.operation = nextString(reader);
+                    break;
+                case "direction":
+                    event.direction = nextString(reader);
+                    break;
+                case "transactionId":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        event.transactionId = reader.nextInt();
+                    }
+                    break;
+                case "error":
+                    event.error = reader.peek() != JsonToken.NULL;
+                    reader.skipValue();
+                    break;
+                case "items":
+                    readItems(reader, event);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readItems(JsonReader reader, LightwaverfSmartEvent event) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Item item = event.nextItem();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "itemId":
+                        item.itemId = nextString(reader);
+                        break;
+                    case "success":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                        } else {
+                            item.success = reader.nextBoolean();
+                        }
+                        break;
+                    case "error":
+                        readError(reader, item);
+                        break;
+                    case "payload":
+                        readPayload(reader, item);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    private static void readError(JsonReader reader, Item item) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            item.error = reader.peek() != JsonToken.NULL;
+            reader.skipValue();
+            return;
+        }
+        item.error = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "code":
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        item.errorCode = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "message":
+                    item.errorMessage = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readPayload(JsonReader reader, Item item) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        item.payload = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "featureId":
+                    item.featureId = nextString(reader);
+                    break;
+                case "value":
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        item.value = reader.nextLong();
+                        item.hasValue = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static @Nullable String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
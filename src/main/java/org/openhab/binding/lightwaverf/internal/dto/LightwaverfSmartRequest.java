@@ -48,6 +48,8 @@ public class LightwaverfSmartRequest {
     @SerializedName("error")
     @Expose
     private String error;
+    // Not sent, System.nanoTime() the command was queued
+    private transient long queuedTime;
 
     // For responses
     public LightwaverfSmartRequest() {
@@ -68,16 +70,15 @@ public class LightwaverfSmartRequest {
         items.add(item);
     }
 
-    /*
-     * public LightwaverfSmartRequest(String classType, String operation, String direction,
-     * List<LightwaverfSmartItem> items) {
-     * this.classType = classType;
-     * this.operation = operation;
-     * this.direction = direction;
-     * this.items = items;
-     * this.version = 1;
-     * }
-     */
+    // Batched Device Requests/Commands
+    public LightwaverfSmartRequest(String classType, String operation, String direction,
+            List<LightwaverfSmartItem> items) {
+        this.classType = classType;
+        this.operation = operation;
+        this.direction = direction;
+        this.items = items;
+        this.version = 1;
+    }
 
     // Device Request/Command
     public LightwaverfSmartRequest(String classType, String operation, String direction, LightwaverfSmartItem item) {
@@ -92,6 +93,10 @@ public class LightwaverfSmartRequest {
         return version;
     }
 
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     public String getSenderId() {
         return senderId;
     }
@@ -104,6 +109,10 @@ public class LightwaverfSmartRequest {
         return direction;
     }
 
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
     public List<LightwaverfSmartItem> getItems() {
         return items;
     }
@@ -116,10 +125,18 @@ public class LightwaverfSmartRequest {
         return classType;
     }
 
+    public void setClass_(String classType) {
+        this.classType = classType;
+    }
+
     public String getOperation() {
         return operation;
     }
 
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
     public Integer getTransactionId() {
         return transactionId;
     }
@@ -135,4 +152,12 @@ public class LightwaverfSmartRequest {
     public void setError(String error) {
         this.error = error;
     }
+
+    public long getQueuedTime() {
+        return queuedTime;
+    }
+
+    public void setQueuedTime(long queuedTime) {
+        this.queuedTime = queuedTime;
+    }
 }
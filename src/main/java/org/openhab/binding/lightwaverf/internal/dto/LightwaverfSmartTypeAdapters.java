@@ -0,0 +1,438 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.dto;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The {@link LightwaverfSmartTypeAdapters} read and write the websocket messages field by field so gson
+ * doesn't need reflection for them. The json names and order match the annotations on the classes.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartTypeAdapters {
+
+    private static final ErrorAdapter ERROR = new ErrorAdapter();
+    private static final FeatureAdapter FEATURE = new FeatureAdapter();
+    private static final PayloadAdapter PAYLOAD = new PayloadAdapter();
+    private static final ItemAdapter ITEM = new ItemAdapter();
+    private static final RequestAdapter REQUEST = new RequestAdapter();
+
+    /**
+     * Adds the adapters for the websocket messages to a gson builder
+     */
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder.registerTypeAdapter(LightwaverfSmartRequest.class, REQUEST)
+                .registerTypeAdapter(LightwaverfSmartItem.class, ITEM)
+                .registerTypeAdapter(LightwaverfSmartPayload.class, PAYLOAD)
+                .registerTypeAdapter(LightwaverfSmartFeature.class, FEATURE)
+                .registerTypeAdapter(LightwaverfSmartError.class, ERROR);
+    }
+
+    private static class RequestAdapter extends TypeAdapter<LightwaverfSmartRequest> {
+        @Override
+        public void write(JsonWriter out, @Nullable LightwaverfSmartRequest value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeNumber(out, "version", value.getVersion());
+            writeString(out, "class", value.getClass_());
+            writeString(out, "operation", value.getOperation());
+            writeString(out, "direction", value.getDirection());
+            writeString(out, "senderId", value.getSenderId());
+            List<LightwaverfSmartItem> items = value.getItems();
+            if (items != null) {
+                out.name("items").beginArray();
+                for (LightwaverfSmartItem item : items) {
+                    ITEM.write(out, item);
+                }
+                out.endArray();
+            }
+            writeNumber(out, "transactionId", value.getTransactionId());
+            writeString(out, "error", value.getError());
+            out.endObject();
+        }
+
+        @Override
+        public @Nullable LightwaverfSmartRequest read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            LightwaverfSmartRequest request = new LightwaverfSmartRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "version":
+                        request.setVersion(readInteger(in));
+                        break;
+                    case "class":
+                        request.setClass_(readString(in));
+                        break;
+                    case "operation":
+                        request.setOperation(readString(in));
+                        break;
+                    case "direction":
+                        request.setDirection(readString(in));
+                        break;
+                    case "senderId":
+                        request.setSenderId(readString(in));
+                        break;
+                    case "items":
+                        request.setItems(readItems(in));
+                        break;
+                    case "transactionId":
+                        request.setTransactionId(readInteger(in));
+                        break;
+                    case "error":
+                        // Kept as text whatever form the server sends it in
+                        if (in.peek() == JsonToken.STRING || in.peek() == JsonToken.NULL) {
+                            request.setError(readString(in));
+                        } else {
+                            request.setError(JsonParser.parseReader(in).toString());
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+
+        private List<LightwaverfSmartItem> readItems(JsonReader in) throws IOException {
+            List<LightwaverfSmartItem> items = new ArrayList<LightwaverfSmartItem>();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return items;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                LightwaverfSmartItem item = ITEM.read(in);
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+            in.endArray();
+            return items;
+        }
+    }
+
+    private static class ItemAdapter extends TypeAdapter<LightwaverfSmartItem> {
+        @Override
+        public void write(JsonWriter out, @Nullable LightwaverfSmartItem value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeString(out, "itemId", value.getItemId());
+            writeBoolean(out, "success", value.getSuccess());
+            LightwaverfSmartPayload payload = value.getPayload();
+            if (payload != null) {
+                PAYLOAD.write(out.name("payload"), payload);
+            }
+            LightwaverfSmartError error = value.getError();
+            if (error != null) {
+                ERROR.write(out.name("error"), error);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public @Nullable LightwaverfSmartItem read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            LightwaverfSmartItem item = new LightwaverfSmartItem();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "itemId":
+                        item.setItemId(readString(in));
+                        break;
+                    case "success":
+                        item.setSuccess(readBoolean(in));
+                        break;
+                    case "payload":
+                        item.setPayload(PAYLOAD.read(in));
+                        break;
+                    case "error":
+                        item.setError(ERROR.read(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return item;
+        }
+    }
+
+    private static class PayloadAdapter extends TypeAdapter<LightwaverfSmartPayload> {
+        @Override
+        public void write(JsonWriter out, @Nullable LightwaverfSmartPayload value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeString(out, "workerUniqueId", value.getWorkerUniqueId());
+            writeString(out, "token", value.getToken());
+            writeString(out, "handlerId", value.getHandlerId());
+            writeString(out, "featureId", value.getFeatureId());
+            writeNumber(out, "deviceId", value.getDeviceId());
+            writeString(out, "type", value.getType());
+            writeNumber(out, "channel", value.getChannel());
+            writeBoolean(out, "writable", value.getWritable());
+            writeBoolean(out, "stateless", value.getStateless());
+            writeBoolean(out, "virtual", value.getVirtual());
+            writeNumber(out, "value", value.getValue());
+            writeString(out, "status", value.getStatus());
+            writeString(out, "clientDeviceId", value.getClientDeviceId());
+            LightwaverfSmartFeature feature = value.getFeature();
+            if (feature != null) {
+                FEATURE.write(out.name("_feature"), feature);
+            }
+            writeString(out, "serverName", value.getServerName());
+            writeString(out, "connectionId", value.getConnectionId());
+            out.endObject();
+        }
+
+        @Override
+        public @Nullable LightwaverfSmartPayload read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            LightwaverfSmartPayload payload = new LightwaverfSmartPayload();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "workerUniqueId":
+                        payload.setWorkerUniqueId(readString(in));
+                        break;
+                    case "token":
+                        payload.setToken(readString(in));
+                        break;
+                    case "handlerId":
+                        payload.setHandlerId(readString(in));
+                        break;
+                    case "featureId":
+                        payload.setFeatureId(readString(in));
+                        break;
+                    case "deviceId":
+                        payload.setDeviceId(readInteger(in));
+                        break;
+                    case "type":
+                        payload.setType(readString(in));
+                        break;
+                    case "channel":
+                        payload.setChannel(readInteger(in));
+                        break;
+                    case "writable":
+                        payload.setWritable(readBoolean(in));
+                        break;
+                    case "stateless":
+                        payload.setStateless(readBoolean(in));
+                        break;
+                    case "virtual":
+                        payload.setVirtual(readBoolean(in));
+                        break;
+                    case "value":
+                        payload.setValue(readLong(in));
+                        break;
+                    case "status":
+                        payload.setStatus(readString(in));
+                        break;
+                    case "clientDeviceId":
+                        payload.setClientDeviceId(readString(in));
+                        break;
+                    case "_feature":
+                        payload.setFeature(FEATURE.read(in));
+                        break;
+                    case "serverName":
+                        payload.setServerName(readString(in));
+                        break;
+                    case "connectionId":
+                        payload.setConnectionId(readString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return payload;
+        }
+    }
+
+    private static class FeatureAdapter extends TypeAdapter<LightwaverfSmartFeature> {
+        @Override
+        public void write(JsonWriter out, @Nullable LightwaverfSmartFeature value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeString(out, "deviceId", value.getDeviceId());
+            writeString(out, "productCode", value.getProductCode());
+            writeString(out, "featureId", value.getFeatureId());
+            writeString(out, "featureType", value.getFeatureType());
+            out.endObject();
+        }
+
+        @Override
+        public @Nullable LightwaverfSmartFeature read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            LightwaverfSmartFeature feature = new LightwaverfSmartFeature();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "deviceId":
+                        feature.setDeviceId(readString(in));
+                        break;
+                    case "productCode":
+                        feature.setProductCode(readString(in));
+                        break;
+                    case "featureId":
+                        feature.setFeatureId(readString(in));
+                        break;
+                    case "featureType":
+                        feature.setFeatureType(readString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return feature;
+        }
+    }
+
+    private static class ErrorAdapter extends TypeAdapter<LightwaverfSmartError> {
+        @Override
+        public void write(JsonWriter out, @Nullable LightwaverfSmartError value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeString(out, "source", value.getSource());
+            writeNumber(out, "group", value.getGroup());
+            writeNumber(out, "code", value.getCode());
+            writeString(out, "message", value.getMessage());
+            out.endObject();
+        }
+
+        @Override
+        public @Nullable LightwaverfSmartError read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            LightwaverfSmartError error = new LightwaverfSmartError();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "source":
+                        error.setSource(readString(in));
+                        break;
+                    case "group":
+                        error.setGroup(readInteger(in));
+                        break;
+                    case "code":
+                        error.setCode(readInteger(in));
+                        break;
+                    case "message":
+                        error.setMessage(readString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return error;
+        }
+    }
+
+    // Null fields are left out as gson does by default
+
+    private static void writeString(JsonWriter out, String name, @Nullable String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeNumber(JsonWriter out, String name, @Nullable Number value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeBoolean(JsonWriter out, String name, @Nullable Boolean value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static @Nullable String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static @Nullable Integer readInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    private static @Nullable Long readLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextLong();
+    }
+
+    private static @Nullable Boolean readBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextBoolean();
+    }
+}
@@ -26,12 +26,16 @@ import org.eclipse.jetty.client.HttpClient;
 import org.openhab.binding.lightwaverf.internal.LightwaverfSmartCommandManager;
 import org.openhab.binding.lightwaverf.internal.config.LightwaverfSmartAccountConfig;
 import org.openhab.binding.lightwaverf.internal.connections.LightwaverfSmartApi;
+import org.openhab.binding.lightwaverf.internal.connections.LightwaverfSmartConnectionState;
+import org.openhab.binding.lightwaverf.internal.connections.LightwaverfSmartLatencyHistogram;
 import org.openhab.binding.lightwaverf.internal.connections.LightwaverfSmartWebsocket;
 import org.openhab.binding.lightwaverf.internal.discovery.LWDiscoveryService;
 import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
 import org.openhab.binding.lightwaverf.internal.dto.api.LightwaverfSmartDevices;
 import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartDeviceListener;
 import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartListener;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartBackoff;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartLane;
 import org.openhab.core.io.net.http.WebSocketFactory;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.ChannelUID;
@@ -61,13 +65,40 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
 
     private @Nullable ScheduledFuture<?> connectionTask;
     private @Nullable ScheduledFuture<?> tokenTask;
-    private @Nullable ScheduledFuture<?> queueTask;
+    private @Nullable ScheduledFuture<?> keepaliveTask;
 
     private Map<String, LightwaverfSmartDevices> devices = new HashMap<String, LightwaverfSmartDevices>();
 
     LightwaverfSmartAccountConfig config = new LightwaverfSmartAccountConfig();
 
-    private Boolean wsOnline = false;
+    /** Delay before the first reconnect after a connection that was online fails */
+    private static final long RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** Longest delay between reconnects */
+    private static final long MAX_RECONNECT_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+    /** Time allowed to connect and log in before the attempt is treated as failed */
+    private static final long CONNECT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final LightwaverfSmartBackoff reconnectBackoff = new LightwaverfSmartBackoff(RECONNECT_DELAY_NANOS,
+            MAX_RECONNECT_DELAY_NANOS);
+    private LightwaverfSmartConnectionState connectionState = LightwaverfSmartConnectionState.DISCONNECTED;
+    private long stateChanged = System.nanoTime();
+    // 0 until a reconnect fails so the first reconnect is straight away
+    private long reconnectDelay = 0;
+    private boolean disposed = false;
+    private @Nullable ScheduledFuture<?> reconnectTask;
+
+    /** How often the previous connection is checked for responses still due after a handover */
+    private static final long DRAIN_CHECK_MILLIS = 100;
+    /** Longest time the previous connection is kept open after a handover */
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private boolean handoverRunning = false;
+    // true when the server asked us to close, so a failed handover has to reconnect instead
+    private boolean handoverRequired = false;
+    private long handoverStarted = 0;
+    private @Nullable ScheduledFuture<?> drainTask;
+    // When commands moved to the current connection, those sent before it are answered on the draining one
+    private long drainSwitched;
 
     public LightwaverfSmartAccountHandler(Bridge thing, WebSocketFactory webSocketFactory, HttpClient httpClient,
             Gson gson) {
@@ -88,7 +119,7 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
         if (!config.username.isEmpty() && !config.password.isEmpty()) {
             // this.electricityCost = ((double) config.electricityCost) / 100;
             api.start(config.username, config.password);
-            commandManager.start(config.retries, config.timeout);
+            commandManager.start(config, scheduler);
             List<LightwaverfSmartDevices> deviceList = api.getDevices();
             for (int i = 0; i < deviceList.size(); i++) {
                 LightwaverfSmartDevices device = deviceList.get(i);
@@ -96,26 +127,31 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
                 // Add to list for device handlers to initialise
                 devices.put(deviceid, deviceList.get(i));
             }
-            queueTask = scheduler.scheduleWithFixedDelay(commandManager, 0, config.delay, TimeUnit.MILLISECONDS);
-            webSocket.start();
+            webSocket.setCompression(config.compression, config.compressionLevel);
+            synchronized (this) {
+                disposed = false;
+                reconnectDelay = 0;
+            }
+            connect(false);
             // Create other tasks
             logger.debug("Creating scheduled tasks");
             Runnable connectionCheck = () -> {
-                if (!wsOnline) {
-                    reConnect();
-                } else {
-                    commandManager.sendPing();
-                }
+                checkConnection();
+                updateStatistics();
             };
             connectionTask = scheduler.scheduleWithFixedDelay(connectionCheck, 60, 60, TimeUnit.SECONDS);
             Runnable refreshTokens = () -> {
-                if (wsOnline) {
+                // When offline the reconnect logs in again anyway
+                if (isConnected()) {
                     refreshTokens();
-                } else {
-                    webSocket.start();
                 }
             };
             tokenTask = scheduler.scheduleWithFixedDelay(refreshTokens, 24, 24, TimeUnit.HOURS);
+            int keepaliveInterval = getKeepaliveInterval();
+            if (keepaliveInterval > 0) {
+                keepaliveTask = scheduler.scheduleWithFixedDelay(this::keepalive, keepaliveInterval,
+                        keepaliveInterval, TimeUnit.SECONDS);
+            }
             updateProperties();
         } else {
             logger.error("Account configuration incomplete");
@@ -137,19 +173,24 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
             tokenTask.cancel(true);
             this.tokenTask = null;
         }
-        ScheduledFuture<?> queueTask = this.queueTask;
-        if (queueTask != null) {
-            Boolean complete = queueTask.cancel(false);
-            if (complete.equals(true)) {
-                this.queueTask = null;
-            } else {
-                logger.debug("Unable to nullify queuetask");
+        ScheduledFuture<?> keepaliveTask = this.keepaliveTask;
+        if (keepaliveTask != null) {
+            keepaliveTask.cancel(true);
+            this.keepaliveTask = null;
+        }
+        synchronized (this) {
+            disposed = true;
+            ScheduledFuture<?> reconnectTask = this.reconnectTask;
+            if (reconnectTask != null) {
+                reconnectTask.cancel(false);
+                this.reconnectTask = null;
             }
+            stopHandover();
+            setConnectionState(LightwaverfSmartConnectionState.DISCONNECTED);
         }
         commandManager.setRunning(false);
         commandManager.stop();
         webSocket.stop();
-        this.wsOnline = false;
     }
 
     @Override
@@ -166,24 +207,52 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
         updateProperties(properties);
     }
 
-    public void addFeature(String featureid, String deviceid) {
-        commandManager.addFeature(featureid, deviceid);
+    private void updateStatistics() {
+        updateProperty("Coalesced Writes", String.valueOf(commandManager.getCoalescedWrites()));
+        updateProperty("Dropped Commands", String.valueOf(commandManager.getDroppedCommands()));
+        updateProperty("Rejected Commands", String.valueOf(commandManager.getRejectedCommands()));
+        updateProperty("Expired Commands", String.valueOf(commandManager.getExpiredCommands()));
+        updateProperty("Round Trip Time", commandManager.getRoundTripTime() + " ms");
+        updateProperty("Response Timeout", commandManager.getResponseTimeout() + " ms");
+        for (LightwaverfSmartLane lane : LightwaverfSmartLane.values()) {
+            updateProperty("Queue Depth " + lane, String.valueOf(commandManager.getQueueDepth(lane)));
+        }
+        for (int i = 0; i < commandManager.getEventLaneCount(); i++) {
+            updateProperty("Event Lane Depth " + i, String.valueOf(commandManager.getEventLaneDepth(i)));
+        }
+        updateProperty("Dropped Events", String.valueOf(commandManager.getDroppedEvents()));
+        updateProperty("Unchanged Updates", String.valueOf(commandManager.getUnchangedUpdates()));
+        updateProperty("Changed Updates", String.valueOf(commandManager.getChangedUpdates()));
+        updateProperty("Throttled Updates", String.valueOf(commandManager.getThrottledUpdates()));
+        updateProperty("Message Bytes Received", String.valueOf(webSocket.getMessageBytesIn()));
+        updateProperty("Message Bytes Sent", String.valueOf(webSocket.getMessageBytesOut()));
+        updateProperty("Frame Bytes Received", String.valueOf(webSocket.getFrameBytesIn()));
+        updateProperty("Frame Bytes Sent", String.valueOf(webSocket.getFrameBytesOut()));
+        updateProperty("Websocket Flushes", String.valueOf(webSocket.getFlushes()));
+        updateProperty("Failed Writes", String.valueOf(webSocket.getFailedWrites()));
+        LightwaverfSmartLatencyHistogram pingLatency = webSocket.getPingLatency();
+        updateProperty("Pongs Received", String.valueOf(pingLatency.getCount()));
+        updateProperty("Missed Pongs", String.valueOf(webSocket.getMissedPongs()));
+        updateProperty("Ping Latency Median", pingLatency.getPercentileMillis(50) + " ms");
+        updateProperty("Ping Latency 99th Percentile", pingLatency.getPercentileMillis(99) + " ms");
+        updateProperty("Ping Latency Max", pingLatency.getMaxMillis() + " ms");
     }
 
-    public void addDeviceListener(String deviceId, LightwaverfSmartDeviceListener listener) {
-        commandManager.addDeviceListener(deviceId, listener);
+    public void addFeature(String featureid, String deviceid, String type, ChannelUID channelUID,
+            @Nullable ChannelUID costChannelUID, LightwaverfSmartDeviceListener listener) {
+        commandManager.addFeature(featureid, deviceid, type, channelUID, costChannelUID, listener);
     }
 
-    public void removeDeviceListener(String deviceId) {
-        commandManager.removeDeviceListener(deviceId);
+    public void removeFeatures(String deviceId) {
+        commandManager.removeFeatures(deviceId);
     }
 
     public void sendDeviceCommand(LightwaverfSmartRequest command) {
         commandManager.queueCommand(command);
     }
 
-    public Boolean isConnected() {
-        return wsOnline;
+    public synchronized Boolean isConnected() {
+        return connectionState == LightwaverfSmartConnectionState.ONLINE;
     }
 
     // Required for device initialisation
@@ -196,14 +265,218 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
         return api.getDevices();
     }
 
-    private void reConnect() {
-        api.login();
+    /**
+     * Starts connecting if there isn't a connection or an attempt already running
+     *
+     * @param login true to get new tokens first
+     */
+    private void connect(boolean login) {
+        synchronized (this) {
+            reconnectTask = null;
+            if (disposed || connectionState != LightwaverfSmartConnectionState.DISCONNECTED) {
+                return;
+            }
+            setConnectionState(LightwaverfSmartConnectionState.CONNECTING);
+        }
+        if (login) {
+            api.login();
+        }
         webSocket.start();
     }
 
+    private synchronized void scheduleReconnect() {
+        if (disposed || reconnectTask != null) {
+            return;
+        }
+        long delay = reconnectDelay;
+        reconnectDelay = reconnectBackoff.next(reconnectDelay);
+        logger.debug("Reconnecting to the websocket in {} ms", TimeUnit.NANOSECONDS.toMillis(delay));
+        reconnectTask = scheduler.schedule(() -> connect(true), delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void checkConnection() {
+        LightwaverfSmartConnectionState state;
+        long elapsed;
+        synchronized (this) {
+            state = connectionState;
+            elapsed = System.nanoTime() - stateChanged;
+        }
+        switch (state) {
+            case ONLINE:
+                boolean handoverTimedOut;
+                synchronized (this) {
+                    handoverTimedOut = handoverRunning && System.nanoTime() - handoverStarted > CONNECT_TIMEOUT_NANOS;
+                }
+                if (handoverTimedOut) {
+                    handoverFailed("it didnt log in in time");
+                }
+                break;
+            case CONNECTING:
+            case AUTHENTICATING:
+                if (elapsed > CONNECT_TIMEOUT_NANOS) {
+                    logger.debug("Websocket didnt connect in time while {}", state);
+                    websocketConnected(false);
+                }
+                break;
+            case DISCONNECTED:
+                scheduleReconnect();
+                break;
+        }
+    }
+
+    /**
+     * @return the seconds between pings, at most half the websocket idle timeout so a connection with no other
+     *         traffic isn't closed even if a ping is lost
+     */
+    private int getKeepaliveInterval() {
+        int max = (int) TimeUnit.MILLISECONDS.toSeconds(LightwaverfSmartWebsocket.IDLE_TIMEOUT_MILLIS / 2);
+        if (config.keepaliveInterval > max) {
+            logger.warn("Keepalive interval of {}s is longer than half the websocket idle timeout, using {}s",
+                    config.keepaliveInterval, max);
+            return max;
+        }
+        return config.keepaliveInterval;
+    }
+
+    /**
+     * Pings the websocket on its own timer so the keepalive isn't held up by commands, the connection is
+     * treated as dead once too many pings in a row haven't had a pong
+     */
+    private void keepalive() {
+        synchronized (this) {
+            if (connectionState != LightwaverfSmartConnectionState.ONLINE) {
+                return;
+            }
+        }
+        int missed = webSocket.sendPing();
+        if (config.keepaliveMissedPongs > 0 && missed >= config.keepaliveMissedPongs) {
+            logger.info("Websocket didnt answer {} pings in a row so reconnecting", missed);
+            websocketConnected(false);
+        }
+    }
+
+    private synchronized void setConnectionState(LightwaverfSmartConnectionState state) {
+        if (connectionState != state) {
+            logger.debug("Websocket connection {} -> {}", connectionState, state);
+            connectionState = state;
+            stateChanged = System.nanoTime();
+        }
+    }
+
     private void refreshTokens() {
         api.login();
-        commandManager.sendLoginCommand();
+        if (!startHandover(false)) {
+            commandManager.sendLoginCommand();
+        }
+    }
+
+    /**
+     * Opens and logs in a new connection while commands carry on over the current one, which is only closed
+     * once the new one has taken over and the responses still due on it have arrived
+     *
+     * @param required true if the current connection is being closed, so it can't be kept if the handover fails
+     * @return false if there isn't an online connection to hand over from
+     */
+    private boolean startHandover(boolean required) {
+        synchronized (this) {
+            if (disposed || connectionState != LightwaverfSmartConnectionState.ONLINE) {
+                return false;
+            }
+            if (handoverRunning) {
+                handoverRequired |= required;
+                return true;
+            }
+            handoverRunning = true;
+            handoverRequired = required;
+            handoverStarted = System.nanoTime();
+        }
+        logger.debug("Handing the websocket over to a new connection");
+        webSocket.startHandover();
+        return true;
+    }
+
+    private void handoverLoggedIn() {
+        synchronized (this) {
+            if (!handoverRunning) {
+                return;
+            }
+        }
+        if (!webSocket.promote()) {
+            handoverFailed("its connection closed");
+            return;
+        }
+        long switched = System.nanoTime();
+        long drained = 0;
+        boolean draining = false;
+        synchronized (this) {
+            handoverRunning = false;
+            ScheduledFuture<?> drainTask = this.drainTask;
+            if (drainTask != null) {
+                drainTask.cancel(false);
+                // promote() closed the connection that was still draining from the last handover
+                drained = drainSwitched;
+                draining = true;
+            }
+            drainSwitched = switched;
+            this.drainTask = scheduler.scheduleWithFixedDelay(() -> drain(switched), DRAIN_CHECK_MILLIS,
+                    DRAIN_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (draining) {
+            commandManager.retryInFlightBefore(drained);
+        }
+        logger.debug("Websocket handover completed in {} ms",
+                TimeUnit.NANOSECONDS.toMillis(switched - handoverStarted));
+    }
+
+    /**
+     * Closes the previous connection once nothing sent on it is waiting on a response
+     */
+    private void drain(long switched) {
+        boolean timedOut = System.nanoTime() - switched > DRAIN_TIMEOUT_NANOS;
+        if (!timedOut && commandManager.hasInFlightBefore(switched)) {
+            return;
+        }
+        synchronized (this) {
+            ScheduledFuture<?> drainTask = this.drainTask;
+            if (drainTask != null) {
+                drainTask.cancel(false);
+                this.drainTask = null;
+            }
+        }
+        logger.debug("Closing the previous websocket connection{}", timedOut ? " with responses still due" : "");
+        webSocket.closeDraining();
+        if (timedOut) {
+            // Their responses can't arrive now so they are sent again rather than waiting for their timeout
+            commandManager.retryInFlightBefore(switched);
+        }
+    }
+
+    private void handoverFailed(String reason) {
+        boolean required;
+        synchronized (this) {
+            if (!handoverRunning) {
+                return;
+            }
+            handoverRunning = false;
+            required = handoverRequired;
+        }
+        logger.info("Websocket handover failed as {}", reason);
+        webSocket.abandonHandover();
+        if (required) {
+            websocketConnected(false);
+        } else {
+            // Keep the current connection and refresh its login instead
+            commandManager.sendLoginCommand();
+        }
+    }
+
+    private synchronized void stopHandover() {
+        handoverRunning = false;
+        ScheduledFuture<?> drainTask = this.drainTask;
+        if (drainTask != null) {
+            drainTask.cancel(false);
+            this.drainTask = null;
+        }
     }
 
     public double getElectricityCost() {
@@ -217,11 +490,63 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
 
     @Override
     public void websocketConnected(Boolean connected) {
-        commandManager.websocketConnected(connected);
-        if (!connected) {
-            updateStatus(ThingStatus.OFFLINE);
-            this.wsOnline = false;
-            webSocket.setConnected(false);
+        if (connected) {
+            LightwaverfSmartConnectionState state;
+            synchronized (this) {
+                state = connectionState;
+                if (state == LightwaverfSmartConnectionState.CONNECTING) {
+                    setConnectionState(LightwaverfSmartConnectionState.AUTHENTICATING);
+                }
+            }
+            if (state != LightwaverfSmartConnectionState.CONNECTING) {
+                // Only an attempt that is still connecting logs in, a late connection would start a second login
+                logger.debug("Ignoring websocket connection while {}", state);
+                if (state == LightwaverfSmartConnectionState.DISCONNECTED) {
+                    webSocket.setConnected(false);
+                }
+                return;
+            }
+            commandManager.websocketConnected(true);
+            return;
+        }
+        synchronized (this) {
+            if (connectionState == LightwaverfSmartConnectionState.DISCONNECTED) {
+                return;
+            }
+            stopHandover();
+            setConnectionState(LightwaverfSmartConnectionState.DISCONNECTED);
+        }
+        commandManager.websocketConnected(false);
+        updateStatus(ThingStatus.OFFLINE);
+        webSocket.setConnected(false);
+        scheduleReconnect();
+    }
+
+    @Override
+    public void websocketClosing() {
+        if (!startHandover(true)) {
+            websocketConnected(false);
+        }
+    }
+
+    @Override
+    public void handoverConnected(Boolean connected) {
+        if (connected) {
+            webSocket.sendHandoverMessage(commandManager.getLoginMessage());
+        } else {
+            handoverFailed("its connection closed");
+        }
+    }
+
+    @Override
+    public void onHandoverMessage(String message) {
+        Boolean success = commandManager.getLoginResult(message);
+        if (success == null) {
+            logger.trace("Ignoring message on the new websocket before it has logged in: {}", message);
+        } else if (success) {
+            handoverLoggedIn();
+        } else {
+            handoverFailed("its login wasnt successful");
         }
     }
 
@@ -235,9 +560,17 @@ public class LightwaverfSmartAccountHandler extends BaseBridgeHandler implements
         webSocket.sendMessage(message);
     }
 
+    @Override
+    public void flushMessages() {
+        webSocket.flush();
+    }
+
     @Override
     public void websocketLoggedIn() {
-        this.wsOnline = true;
+        synchronized (this) {
+            setConnectionState(LightwaverfSmartConnectionState.ONLINE);
+            reconnectDelay = 0;
+        }
         webSocket.setConnected(true);
         updateStatus(ThingStatus.ONLINE);
     }
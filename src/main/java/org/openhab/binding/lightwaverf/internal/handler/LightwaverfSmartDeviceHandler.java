@@ -19,6 +19,7 @@ import java.util.Map;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.binding.lightwaverf.internal.config.LightwaverfSmartDeviceConfig;
+import org.openhab.binding.lightwaverf.internal.converters.LightwaverfSmartColor;
 import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartItem;
 import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartPayload;
 import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
@@ -26,10 +27,8 @@ import org.openhab.binding.lightwaverf.internal.dto.api.LightwaverfSmartDevices;
 import org.openhab.binding.lightwaverf.internal.dto.api.LightwaverfSmartFeatureSets;
 import org.openhab.binding.lightwaverf.internal.dto.api.LightwaverfSmartFeatures;
 import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartDeviceListener;
-import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.HSBType;
 import org.openhab.core.library.types.OnOffType;
-import org.openhab.core.library.types.PercentType;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
@@ -91,12 +90,17 @@ public class LightwaverfSmartDeviceHandler extends BaseThingHandler implements L
                                 String featureid = features.get(j).getFeatureId();
                                 logger.trace("Adding Channel {} with featureid {} to map for device {}", channel,
                                         featureid, config.deviceid);
-                                account.addFeature(featureid, config.deviceid);
+                                // Power and energy channels also update their cost channel
+                                ChannelUID costChannel = null;
+                                if (getThing().getChannel(channel + "Cost") != null) {
+                                    costChannel = new ChannelUID(getThing().getUID(), channel + "Cost");
+                                }
+                                account.addFeature(featureid, config.deviceid, features.get(j).getType(),
+                                        new ChannelUID(getThing().getUID(), channel), costChannel, this);
                                 channels.putIfAbsent(channel, featureid);
                             }
                         }
                         setProperties(device);
-                        account.addDeviceListener(config.deviceid, this);
                     }
                     if (bridge.getStatus() == ThingStatus.ONLINE) {
                         updateStatus(ThingStatus.ONLINE);
@@ -125,7 +129,7 @@ public class LightwaverfSmartDeviceHandler extends BaseThingHandler implements L
         logger.debug("LightwaveRF - Running dispose()");
         LightwaverfSmartAccountHandler account = this.account;
         if (account != null) {
-            account.removeDeviceListener(config.deviceid);
+            account.removeFeatures(config.deviceid);
             account = null;
         }
     }
@@ -179,8 +183,8 @@ public class LightwaverfSmartDeviceHandler extends BaseThingHandler implements L
             case "rgbColor":
                 if (command.contains(",")) {
                     HSBType hsb = new HSBType(command);
-                    int hue = Integer.parseInt(hsb.getHue().toString());
-                    int brightness = Integer.parseInt(hsb.getBrightness().toString());
+                    int hue = hsb.getHue().intValue();
+                    int brightness = hsb.getBrightness().intValue();
                     if (brightness > 100) {
                         brightness = 100;
                     }
@@ -197,18 +201,7 @@ public class LightwaverfSmartDeviceHandler extends BaseThingHandler implements L
                     } else if (hue >= 325) {
                         hue = 0;
                     }
-                    PercentType brightness1 = new PercentType(brightness);
-                    DecimalType hue1 = new DecimalType(hue);
-                    PercentType saturation = new PercentType(100);
-                    HSBType h = new HSBType(hue1, saturation, brightness1);
-                    PercentType redp = h.getRed();
-                    PercentType greenp = h.getGreen();
-                    PercentType bluep = h.getBlue();
-                    int redr = (int) (redp.doubleValue() * 255 / 100);
-                    int greenr = (int) (greenp.doubleValue() * 255 / 100);
-                    int bluer = (int) (bluep.doubleValue() * 255 / 100);
-                    long d = (redr * 65536 + greenr * 256 + bluer);
-                    return d;
+                    return LightwaverfSmartColor.toRGB(hue, 100, brightness);
                 } else {
                     logger.warn("LightwaveRF - Brightness Is Not Supported For the RGB Colour Channel");
                     return -1;
@@ -291,7 +284,8 @@ public class LightwaverfSmartDeviceHandler extends BaseThingHandler implements L
                     _class, operation);
         } else {
             LightwaverfSmartAccountHandler account = this.account;
-            if (account != null && account.isConnected()) {
+            // Writes are kept by the account while it's disconnected and sent when it reconnects
+            if (account != null && (account.isConnected() || operation.equals("write"))) {
                 account.sendDeviceCommand(command);
             } else {
                 logger.error("Could not set status for device {} as the account is disconnected", config.deviceid);
@@ -300,21 +294,8 @@ public class LightwaverfSmartDeviceHandler extends BaseThingHandler implements L
     }
 
     @Override
-    public void updateChannel(String channelId, State state) {
-        updateState(channelId, state);
-        logger.debug("Device {} Updated Channel {}", config.deviceid, channelId);
-        if (channelId.contains("power") || channelId.contains("energy")) {
-            LightwaverfSmartAccountHandler account = this.account;
-            if (account != null) {
-                double electricityCost = account.getElectricityCost();
-                double value = Double.valueOf(state.toString());
-                if (channelId.contains("power")) {
-                    updateState(channelId + "Cost", new DecimalType((value / 100000) * electricityCost));
-                }
-                if (channelId.contains("energy")) {
-                    updateState(channelId + "Cost", new DecimalType(value / 100 * electricityCost));
-                }
-            }
-        }
+    public void updateChannel(ChannelUID channelUID, State state) {
+        updateState(channelUID, state);
+        logger.debug("Device {} Updated Channel {}", config.deviceid, channelUID.getId());
     }
 }
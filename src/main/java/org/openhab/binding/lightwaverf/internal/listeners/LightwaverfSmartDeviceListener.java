@@ -13,6 +13,7 @@
 package org.openhab.binding.lightwaverf.internal.listeners;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.types.State;
 
 /**
@@ -25,10 +26,10 @@ public interface LightwaverfSmartDeviceListener {
     /**
      * Event for device channels
      *
-     * @param channelId device channel type
+     * @param channelUID device channel
      * @param state new state of the channel
      */
     // void stateUpdate(LightwaverfSmartRequest message);
 
-    void updateChannel(String channelId, State state);
+    void updateChannel(ChannelUID channelUID, State state);
 }
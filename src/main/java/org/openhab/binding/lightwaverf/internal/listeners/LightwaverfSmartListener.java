@@ -26,9 +26,17 @@ public interface LightwaverfSmartListener {
 
     void websocketLoggedIn();
 
+    void websocketClosing();
+
+    void handoverConnected(Boolean connected);
+
+    void onHandoverMessage(String message);
+
     void onMessage(String message);
 
     void sendMessage(String message);
 
+    void flushMessages();
+
     void tokenUpdated(String token);
 }
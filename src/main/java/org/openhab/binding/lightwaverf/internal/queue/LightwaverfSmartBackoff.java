@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link LightwaverfSmartBackoff} works out how long to wait before trying again using exponential
+ * backoff with decorrelated jitter, each delay is a random time between the base delay and three times the
+ * previous delay, up to a maximum. The randomness stops everything that failed together retrying together.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartBackoff {
+
+    private final long baseNanos;
+    private final long maxNanos;
+    // Null to use the random of the calling thread
+    private final @Nullable Random random;
+
+    public LightwaverfSmartBackoff(long baseNanos, long maxNanos) {
+        this(baseNanos, maxNanos, null);
+    }
+
+    /**
+     * @param random the source of the jitter, a seeded random gives the same delays every time
+     */
+    public LightwaverfSmartBackoff(long baseNanos, long maxNanos, @Nullable Random random) {
+        this.baseNanos = Math.max(1, baseNanos);
+        this.maxNanos = Math.max(this.baseNanos, maxNanos);
+        this.random = random;
+    }
+
+    /**
+     * @param previousNanos the previous delay, 0 for the first attempt
+     * @return the next delay in nanoseconds
+     */
+    public long next(long previousNanos) {
+        long upper = Math.min(maxNanos, Math.max(baseNanos, previousNanos) * 3);
+        if (upper <= baseNanos) {
+            return baseNanos;
+        }
+        Random random = this.random;
+        if (random == null) {
+            return ThreadLocalRandom.current().nextLong(baseNanos, upper + 1);
+        }
+        return baseNanos + Math.floorMod(random.nextLong(), upper - baseNanos + 1);
+    }
+}
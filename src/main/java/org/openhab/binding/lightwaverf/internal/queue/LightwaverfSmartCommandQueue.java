@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
+
+/**
+ * The {@link LightwaverfSmartCommandQueue} holds the commands waiting to be sent to the websocket in
+ * separate {@link LightwaverfSmartLane}s. Logins are always taken first, the other lanes share the
+ * websocket by weighted round robin so a large refresh can't hold up user commands and reads are
+ * never starved completely. The queue holds a limited number of commands, see
+ * {@link LightwaverfSmartOverflowPolicy} for what happens when it's full.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartCommandQueue {
+
+    private static final LightwaverfSmartLane[] LANES = LightwaverfSmartLane.values();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<LightwaverfSmartLane, Deque<LightwaverfSmartRequest>> lanes = new EnumMap<LightwaverfSmartLane, Deque<LightwaverfSmartRequest>>(
+            LightwaverfSmartLane.class);
+    /** Commands each lane can still send in the current round */
+    private final int[] credits = new int[LANES.length];
+    private int capacity = Integer.MAX_VALUE;
+    private LightwaverfSmartOverflowPolicy policy = LightwaverfSmartOverflowPolicy.DROP_OLDEST;
+    /**
+     * Time to live in nanoseconds for queued commands, 0 to keep them until they are sent. A retry counts
+     * from when it is queued again after its backoff, not from when the command was first queued.
+     */
+    private volatile long timeToLive = 0;
+    /** Only logins are taken while the websocket isn't logged in, the other commands wait in their lanes */
+    private boolean loginsOnly = false;
+
+    public LightwaverfSmartCommandQueue() {
+        for (LightwaverfSmartLane lane : LANES) {
+            lanes.put(lane, new ArrayDeque<LightwaverfSmartRequest>());
+            credits[lane.ordinal()] = lane.getWeight();
+        }
+    }
+
+    public void setCapacity(int capacity, LightwaverfSmartOverflowPolicy policy) {
+        lock.lock();
+        try {
+            this.capacity = Math.max(1, capacity);
+            this.policy = policy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setTimeToLive(long nanos) {
+        this.timeToLive = Math.max(0, nanos);
+    }
+
+    /**
+     * @return true if the command has been queued for longer than its time to live, logins never expire
+     */
+    public boolean isExpired(LightwaverfSmartRequest command) {
+        long timeToLive = this.timeToLive;
+        if (timeToLive <= 0 || LightwaverfSmartLane.of(command) == LightwaverfSmartLane.AUTHENTICATE) {
+            return false;
+        }
+        return System.nanoTime() - command.getQueuedTime() > timeToLive;
+    }
+
+    /**
+     * Adds a new command to the back of its lane, making room by the overflow policy if the queue is full
+     *
+     * @return the command that was dropped to make room, the new command itself if it was rejected,
+     *         or null if nothing was dropped
+     */
+    public @Nullable LightwaverfSmartRequest offer(LightwaverfSmartRequest command) {
+        lock.lock();
+        try {
+            LightwaverfSmartLane lane = LightwaverfSmartLane.of(command);
+            LightwaverfSmartRequest dropped = null;
+            if (lane != LightwaverfSmartLane.AUTHENTICATE && size() >= capacity) {
+                dropped = makeRoom(command);
+                if (dropped == command) {
+                    return command;
+                }
+            }
+            command.setQueuedTime(System.nanoTime());
+            lane(lane).addLast(command);
+            notEmpty.signal();
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a command to the front of its lane, used for commands that have to keep their place
+     */
+    public void addFirst(LightwaverfSmartRequest command) {
+        lock.lock();
+        try {
+            lane(LightwaverfSmartLane.of(command)).addFirst(command);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a command that is being sent again to the front of its lane, its time to live starts again as the
+     * backoff doesn't count against it
+     */
+    public void retry(LightwaverfSmartRequest command) {
+        lock.lock();
+        try {
+            command.setQueuedTime(System.nanoTime());
+            lane(LightwaverfSmartLane.of(command)).addFirst(command);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts back a command taken by {@link #poll()} that couldn't be sent yet, its lane gets back the credit
+     * it used so the round robin isn't skewed
+     */
+    public void requeue(LightwaverfSmartRequest command) {
+        lock.lock();
+        try {
+            lane(LightwaverfSmartLane.of(command)).addFirst(command);
+            refundCredit(LightwaverfSmartLane.of(command));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back the credit used by a command taken by {@link #poll()} that is being held back elsewhere
+     */
+    public void refund(LightwaverfSmartRequest command) {
+        lock.lock();
+        try {
+            refundCredit(LightwaverfSmartLane.of(command));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refundCredit(LightwaverfSmartLane lane) {
+        if (credits[lane.ordinal()] < lane.getWeight()) {
+            credits[lane.ordinal()]++;
+        }
+    }
+
+    public void setLoginsOnly(boolean loginsOnly) {
+        lock.lock();
+        try {
+            this.loginsOnly = loginsOnly;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every command in a lane
+     *
+     * @return the commands in the order they would have been sent
+     */
+    public List<LightwaverfSmartRequest> drain(LightwaverfSmartLane lane) {
+        lock.lock();
+        try {
+            Deque<LightwaverfSmartRequest> commands = lane(lane);
+            List<LightwaverfSmartRequest> drained = new ArrayList<LightwaverfSmartRequest>(commands);
+            commands.clear();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public @Nullable LightwaverfSmartRequest poll() {
+        lock.lock();
+        try {
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public @Nullable LightwaverfSmartRequest poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            LightwaverfSmartRequest command;
+            while ((command = next()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return command;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            for (LightwaverfSmartLane lane : LANES) {
+                lane(lane).clear();
+                credits[lane.ordinal()] = lane.getWeight();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            int size = 0;
+            for (LightwaverfSmartLane lane : LANES) {
+                size += lane(lane).size();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size(LightwaverfSmartLane lane) {
+        lock.lock();
+        try {
+            return lane(lane).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LightwaverfSmartRequest makeRoom(LightwaverfSmartRequest command) {
+        if (policy == LightwaverfSmartOverflowPolicy.REJECT) {
+            return command;
+        }
+        if (policy == LightwaverfSmartOverflowPolicy.DROP_READS) {
+            LightwaverfSmartRequest read = lane(LightwaverfSmartLane.READ).pollFirst();
+            if (read != null) {
+                return read;
+            }
+        }
+        // The head of each lane is the oldest command in it
+        Deque<LightwaverfSmartRequest> oldest = null;
+        for (LightwaverfSmartLane lane : LANES) {
+            Deque<LightwaverfSmartRequest> commands = lane(lane);
+            LightwaverfSmartRequest head = commands.peekFirst();
+            if (lane == LightwaverfSmartLane.AUTHENTICATE || head == null) {
+                continue;
+            }
+            LightwaverfSmartRequest oldestHead = oldest != null ? oldest.peekFirst() : null;
+            if (oldestHead == null || head.getQueuedTime() - oldestHead.getQueuedTime() < 0) {
+                oldest = commands;
+            }
+        }
+        if (oldest == null) {
+            return command;
+        }
+        LightwaverfSmartRequest dropped = oldest.pollFirst();
+        return dropped != null ? dropped : command;
+    }
+
+    private @Nullable LightwaverfSmartRequest next() {
+        if (loginsOnly) {
+            return lane(LightwaverfSmartLane.AUTHENTICATE).pollFirst();
+        }
+        for (int round = 0; round < 2; round++) {
+            for (LightwaverfSmartLane lane : LANES) {
+                Deque<LightwaverfSmartRequest> commands = lane(lane);
+                if (!commands.isEmpty() && credits[lane.ordinal()] > 0) {
+                    credits[lane.ordinal()]--;
+                    return commands.pollFirst();
+                }
+            }
+            // Every lane with commands waiting has used its share so start a new round
+            for (LightwaverfSmartLane lane : LANES) {
+                credits[lane.ordinal()] = lane.getWeight();
+            }
+        }
+        return null;
+    }
+
+    private Deque<LightwaverfSmartRequest> lane(LightwaverfSmartLane lane) {
+        Deque<LightwaverfSmartRequest> commands = lanes.get(lane);
+        if (commands == null) {
+            throw new IllegalStateException("No queue for lane " + lane);
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link LightwaverfSmartEventLanes} passes channel updates from the websocket to a small set of threads so
+ * the websocket can carry on reading while openHAB processes them. Updates for a device always use the same
+ * lane so they stay in order, while different devices can be updated at the same time.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartEventLanes {
+
+    private final Logger logger = LoggerFactory.getLogger(LightwaverfSmartEventLanes.class);
+    private final Lane[] lanes;
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    /**
+     * @param count the number of lanes, each with its own thread
+     * @param capacity the number of updates each lane can hold before updates are dropped, callers keep one
+     *            update per channel waiting so this is a number of channels
+     */
+    public LightwaverfSmartEventLanes(int count, int capacity) {
+        this.lanes = new Lane[Math.max(1, count)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, Math.max(1, capacity));
+        }
+    }
+
+    public synchronized void start() {
+        for (Lane lane : lanes) {
+            lane.start();
+        }
+    }
+
+    public synchronized void stop() {
+        for (Lane lane : lanes) {
+            lane.stop();
+        }
+    }
+
+    /**
+     * Adds an update to the lane for the key without waiting, the update is dropped if the lane is full
+     *
+     * @param key the key to keep in order, normally the deviceid
+     * @param update the update to run
+     * @return false if the update was dropped
+     */
+    public boolean dispatch(String key, Runnable update) {
+        if (!lanes[Math.floorMod(key.hashCode(), lanes.length)].queue.offer(update)) {
+            droppedEvents.incrementAndGet();
+            logger.debug("Update for {} was dropped as its event lane is full", key);
+            return false;
+        }
+        return true;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * @param lane the lane index
+     * @return the number of updates waiting in the lane
+     */
+    public int getDepth(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    private class Lane implements Runnable {
+        private final int index;
+        private final BlockingQueue<Runnable> queue;
+        private volatile @Nullable Thread thread;
+
+        Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void start() {
+            if (thread == null) {
+                Thread thread = new Thread(this, "OH-binding-lightwaverf-events-" + index);
+                thread.setDaemon(true);
+                this.thread = thread;
+                thread.start();
+            }
+        }
+
+        void stop() {
+            Thread thread = this.thread;
+            if (thread != null) {
+                this.thread = null;
+                thread.interrupt();
+            }
+            queue.clear();
+        }
+
+        @Override
+        public void run() {
+            while (thread == Thread.currentThread()) {
+                try {
+                    queue.take().run();
+                } catch (InterruptedException e) {
+                    logger.trace("Event lane {} interrupted", index);
+                } catch (RuntimeException e) {
+                    logger.error("Event lane {} threw an exception: {}", index, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
+
+/**
+ * The {@link LightwaverfSmartLane} defines the priority lanes of the command queue, in order of priority.
+ * The weight is the number of commands a lane can send before lower lanes get a turn.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public enum LightwaverfSmartLane {
+    AUTHENTICATE(Integer.MAX_VALUE),
+    WRITE(8),
+    READ(1);
+
+    private final int weight;
+
+    private LightwaverfSmartLane(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public static LightwaverfSmartLane of(LightwaverfSmartRequest command) {
+        String operation = command.getOperation();
+        if (operation == null) {
+            return READ;
+        }
+        switch (operation) {
+            case "authenticate":
+                return AUTHENTICATE;
+            case "write":
+                return WRITE;
+            default:
+                return READ;
+        }
+    }
+}
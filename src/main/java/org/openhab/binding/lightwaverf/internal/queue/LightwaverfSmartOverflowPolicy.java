@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link LightwaverfSmartOverflowPolicy} decides what happens to a new command when the
+ * {@link LightwaverfSmartCommandQueue} is full. Logins are always queued.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public enum LightwaverfSmartOverflowPolicy {
+    /** Drop the command that has been queued the longest */
+    DROP_OLDEST,
+    /** Drop the oldest channel refresh, or the oldest command if there aren't any */
+    DROP_READS,
+    /** Don't queue the new command */
+    REJECT;
+
+    public static LightwaverfSmartOverflowPolicy fromConfig(String policy) {
+        switch (policy) {
+            case "dropReads":
+                return DROP_READS;
+            case "reject":
+                return REJECT;
+            default:
+                return DROP_OLDEST;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link LightwaverfSmartRttEstimator} works out how long to wait for a response from the websocket
+ * the same way TCP does (RFC 6298), from a smoothed round trip time and its variation. The timeout is
+ * doubled when a response is missed and is always kept within the configured bounds.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartRttEstimator {
+
+    private final long minTimeoutNanos;
+    private final long maxTimeoutNanos;
+    private long smoothedRtt;
+    private long rttVariation;
+    private long timeout;
+    private boolean measured;
+
+    public LightwaverfSmartRttEstimator(long initialTimeoutNanos, long minTimeoutNanos, long maxTimeoutNanos) {
+        this.minTimeoutNanos = minTimeoutNanos;
+        this.maxTimeoutNanos = Math.max(minTimeoutNanos, maxTimeoutNanos);
+        this.timeout = clamp(initialTimeoutNanos);
+    }
+
+    /**
+     * Adds a round trip time, only use commands that were sent once as a retried command can't tell which
+     * send the response was for
+     */
+    public synchronized void update(long rttNanos) {
+        if (!measured) {
+            smoothedRtt = rttNanos;
+            rttVariation = rttNanos / 2;
+            measured = true;
+        } else {
+            rttVariation += (Math.abs(smoothedRtt - rttNanos) - rttVariation) / 4;
+            smoothedRtt += (rttNanos - smoothedRtt) / 8;
+        }
+        timeout = clamp(smoothedRtt + 4 * rttVariation);
+    }
+
+    /**
+     * Doubles the timeout after a response wasn't received in time
+     */
+    public synchronized void backoff() {
+        timeout = clamp(timeout * 2);
+    }
+
+    public synchronized long getTimeoutNanos() {
+        return timeout;
+    }
+
+    public synchronized long getSmoothedRttNanos() {
+        return smoothedRtt;
+    }
+
+    private long clamp(long nanos) {
+        return Math.max(minTimeoutNanos, Math.min(maxTimeoutNanos, nanos));
+    }
+}
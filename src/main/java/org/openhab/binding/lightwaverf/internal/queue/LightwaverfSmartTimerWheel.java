@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link LightwaverfSmartTimerWheel} is a hashed timer wheel for transaction timeouts. Each transaction
+ * is linked into the bucket for its deadline tick, so scheduling and cancelling are constant time and
+ * a tick only looks at the one bucket. Deadlines further away than one turn of the wheel stay in their
+ * bucket until the turn they are due. The wheel isn't thread safe, the table guards it.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartTimerWheel {
+
+    private final long tickNanos;
+    private final int mask;
+    private final @Nullable LightwaverfSmartTransaction[] buckets;
+    private final long startTime = System.nanoTime();
+    /** Last tick that has been processed */
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickNanos the resolution of the timer
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     */
+    public LightwaverfSmartTimerWheel(long tickNanos, int ticksPerWheel) {
+        int buckets = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.tickNanos = tickNanos;
+        this.mask = buckets - 1;
+        this.buckets = new LightwaverfSmartTransaction[buckets];
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void schedule(LightwaverfSmartTransaction transaction, long delayNanos) {
+        cancel(transaction);
+        long deadlineTick = (System.nanoTime() - startTime + delayNanos + tickNanos - 1) / tickNanos;
+        transaction.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+        int index = (int) (transaction.deadlineTick & mask);
+        LightwaverfSmartTransaction head = buckets[index];
+        transaction.previous = null;
+        transaction.next = head;
+        if (head != null) {
+            head.previous = transaction;
+        }
+        buckets[index] = transaction;
+        transaction.scheduled = true;
+        size++;
+    }
+
+    /**
+     * @return true if the transaction was waiting on a timeout
+     */
+    public boolean cancel(LightwaverfSmartTransaction transaction) {
+        if (!transaction.scheduled) {
+            return false;
+        }
+        LightwaverfSmartTransaction previous = transaction.previous;
+        LightwaverfSmartTransaction next = transaction.next;
+        if (previous != null) {
+            previous.next = next;
+        } else {
+            buckets[(int) (transaction.deadlineTick & mask)] = next;
+        }
+        if (next != null) {
+            next.previous = previous;
+        }
+        transaction.previous = null;
+        transaction.next = null;
+        transaction.scheduled = false;
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel on to the current time
+     *
+     * @return the transactions whose deadline has passed, these are no longer scheduled
+     */
+    public List<LightwaverfSmartTransaction> advance() {
+        long nowTick = (System.nanoTime() - startTime) / tickNanos;
+        if (nowTick <= currentTick || size == 0) {
+            currentTick = Math.max(currentTick, nowTick);
+            return Collections.emptyList();
+        }
+        List<LightwaverfSmartTransaction> expired = new ArrayList<LightwaverfSmartTransaction>();
+        // No need to go round the wheel more than once, later turns are checked by their deadline
+        long lastTick = Math.min(nowTick, currentTick + buckets.length);
+        for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+            LightwaverfSmartTransaction transaction = buckets[(int) (tick & mask)];
+            while (transaction != null) {
+                LightwaverfSmartTransaction next = transaction.next;
+                if (transaction.deadlineTick <= nowTick) {
+                    cancel(transaction);
+                    expired.add(transaction);
+                }
+                transaction = next;
+            }
+        }
+        currentTick = nowTick;
+        return expired;
+    }
+
+    public void clear() {
+        for (int i = 0; i < buckets.length; i++) {
+            LightwaverfSmartTransaction transaction = buckets[i];
+            while (transaction != null) {
+                LightwaverfSmartTransaction next = transaction.next;
+                transaction.previous = null;
+                transaction.next = null;
+                transaction.scheduled = false;
+                transaction = next;
+            }
+            buckets[i] = null;
+        }
+        size = 0;
+    }
+}
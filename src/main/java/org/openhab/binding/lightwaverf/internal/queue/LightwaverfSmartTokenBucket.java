@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link LightwaverfSmartTokenBucket} limits the rate messages are sent to the websocket.
+ * Tokens are added at the sustained rate up to the burst size, so a burst of commands goes out
+ * straight away and only a long run of commands is slowed down to the sustained rate.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartTokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate sustained number of messages per second, 0 or less for no limit
+     * @param burst number of messages that can be sent at once
+     */
+    public LightwaverfSmartTokenBucket(int rate, int burst) {
+        this.tokensPerNano = rate / (double) TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Waits until a token is available and takes it
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #acquire()} for a message that wasn't sent
+     */
+    public synchronized void release() {
+        if (tokensPerNano > 0) {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+    }
+
+    /**
+     * Takes a token, which may not have been added yet
+     *
+     * @return nanoseconds to wait before the token can be used
+     */
+    private synchronized long reserve() {
+        if (tokensPerNano <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / tokensPerNano);
+    }
+}
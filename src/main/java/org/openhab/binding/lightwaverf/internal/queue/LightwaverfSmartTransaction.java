@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
+
+/**
+ * The {@link LightwaverfSmartTransaction} is the record kept in the {@link LightwaverfSmartTransactionTable}
+ * for a command from when it's first sent until it succeeds or is given up on, including while it waits
+ * to be retried. It also links itself into the {@link LightwaverfSmartTimerWheel} so timeouts don't need
+ * any further objects.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartTransaction {
+
+    public enum Status {
+        /** Sent and waiting on a response */
+        SENT,
+        /** No response was received in time, or the response wasn't successful */
+        FAILED,
+        /** Waiting for the backoff delay before it's sent again */
+        BACKOFF,
+        /** Back in the queue to be sent again */
+        QUEUED,
+        /** Response received */
+        COMPLETE
+    }
+
+    private final LightwaverfSmartRequest command;
+    private String key = "";
+    private int permits;
+    private int attempts;
+    private Status status = Status.QUEUED;
+    private long sentTime;
+    private long retryDelay;
+
+    // Timer wheel links, only used while holding the table lock
+    long deadlineTick;
+    boolean scheduled;
+    @Nullable
+    LightwaverfSmartTransaction previous;
+    @Nullable
+    LightwaverfSmartTransaction next;
+
+    public LightwaverfSmartTransaction(LightwaverfSmartRequest command) {
+        this.command = command;
+    }
+
+    public LightwaverfSmartRequest getCommand() {
+        return command;
+    }
+
+    public Integer getTransactionId() {
+        return command.getTransactionId();
+    }
+
+    /**
+     * @return the device the command is for, only one command per device is in flight at a time
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the number of window slots held while the command is in flight
+     */
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * @return the number of times the command has been sent
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the last backoff delay in nanoseconds before the command was sent again, 0 if it hasn't been retried
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} the command was last sent
+     */
+    public long getSentTime() {
+        return sentTime;
+    }
+
+    void markSent(String key, int permits) {
+        this.key = key;
+        this.permits = permits;
+        this.attempts++;
+        this.status = Status.SENT;
+        this.sentTime = System.nanoTime();
+    }
+
+    void markWritten() {
+        this.sentTime = System.nanoTime();
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartTransaction.Status;
+
+/**
+ * The {@link LightwaverfSmartTransactionTable} keeps a {@link LightwaverfSmartTransaction} for every command
+ * that has been sent and not yet finished with, keyed by transactionId. It holds a fixed maximum number of
+ * records and a record is removed as soon as its command succeeds, fails or runs out of retries, so the
+ * table can't grow over a long uptime. Response timeouts are run by a {@link LightwaverfSmartTimerWheel}.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartTransactionTable {
+
+    private final Map<Integer, LightwaverfSmartTransaction> transactions = new HashMap<Integer, LightwaverfSmartTransaction>();
+    private final LightwaverfSmartTimerWheel wheel;
+    private final int capacity;
+
+    public LightwaverfSmartTransactionTable(int capacity, long tickNanos, int ticksPerWheel) {
+        this.capacity = capacity;
+        this.wheel = new LightwaverfSmartTimerWheel(tickNanos, ticksPerWheel);
+    }
+
+    public synchronized @Nullable LightwaverfSmartTransaction get(Integer transactionId) {
+        return transactions.get(transactionId);
+    }
+
+    /**
+     * Records the command as sent and starts its response timeout. A command being retried keeps its record.
+     *
+     * @return the record, or null if the table is full
+     */
+    public synchronized @Nullable LightwaverfSmartTransaction send(LightwaverfSmartRequest command, String key,
+            int permits, long timeoutNanos) {
+        LightwaverfSmartTransaction transaction = transactions.get(command.getTransactionId());
+        if (transaction == null) {
+            if (transactions.size() >= capacity) {
+                return null;
+            }
+            transaction = new LightwaverfSmartTransaction(command);
+            transactions.put(command.getTransactionId(), transaction);
+        }
+        transaction.markSent(key, permits);
+        wheel.schedule(transaction, timeoutNanos);
+        return transaction;
+    }
+
+    /**
+     * Restarts the response timeout from when the command was handed to the websocket, so the time it spent
+     * waiting on the batch and the rate limit isn't counted against it
+     */
+    public synchronized void written(Integer transactionId, long timeoutNanos) {
+        LightwaverfSmartTransaction transaction = transactions.get(transactionId);
+        if (transaction == null || transaction.getStatus() != Status.SENT) {
+            return;
+        }
+        transaction.markWritten();
+        wheel.schedule(transaction, timeoutNanos);
+    }
+
+    /**
+     * Removes the record for a command that has had its response
+     *
+     * @return the record if the command was still waiting on a response
+     */
+    public synchronized @Nullable LightwaverfSmartTransaction complete(Integer transactionId) {
+        LightwaverfSmartTransaction transaction = transactions.get(transactionId);
+        if (transaction == null || transaction.getStatus() != Status.SENT) {
+            return null;
+        }
+        transactions.remove(transactionId);
+        wheel.cancel(transaction);
+        transaction.setStatus(Status.COMPLETE);
+        return transaction;
+    }
+
+    /**
+     * Marks a command as failed when its response wasn't successful
+     *
+     * @return the record if the command was still waiting on a response
+     */
+    public synchronized @Nullable LightwaverfSmartTransaction fail(Integer transactionId) {
+        LightwaverfSmartTransaction transaction = transactions.get(transactionId);
+        if (transaction == null || transaction.getStatus() != Status.SENT) {
+            return null;
+        }
+        wheel.cancel(transaction);
+        transaction.setStatus(Status.FAILED);
+        return transaction;
+    }
+
+    /**
+     * Marks the commands sent before a time as failed, used when the connection they were sent on has closed
+     * so their responses won't arrive
+     *
+     * @return the records, oldest first
+     */
+    public synchronized List<LightwaverfSmartTransaction> failSentBefore(long nanos) {
+        List<LightwaverfSmartTransaction> failed = new ArrayList<LightwaverfSmartTransaction>();
+        for (LightwaverfSmartTransaction transaction : transactions.values()) {
+            if (transaction.getStatus() == Status.SENT && transaction.getSentTime() - nanos < 0) {
+                wheel.cancel(transaction);
+                transaction.setStatus(Status.FAILED);
+                failed.add(transaction);
+            }
+        }
+        failed.sort(Comparator.comparingLong(LightwaverfSmartTransaction::getSentTime));
+        return failed;
+    }
+
+    /**
+     * Marks a failed command as waiting in the queue to be sent again without a backoff
+     */
+    public synchronized void requeue(LightwaverfSmartTransaction transaction) {
+        transaction.setStatus(Status.QUEUED);
+    }
+
+    /**
+     * Holds a failed command in the table until it's due to be sent again
+     */
+    public synchronized void backoff(LightwaverfSmartTransaction transaction, long delayNanos) {
+        transaction.setRetryDelay(delayNanos);
+        transaction.setStatus(Status.BACKOFF);
+        wheel.schedule(transaction, delayNanos);
+    }
+
+    /**
+     * @return true if the command is a retry that has been put back in the queue
+     */
+    public synchronized boolean isRetry(Integer transactionId) {
+        LightwaverfSmartTransaction transaction = transactions.get(transactionId);
+        return transaction != null && transaction.getStatus() == Status.QUEUED;
+    }
+
+    /**
+     * Removes the record for a command that won't be sent again
+     */
+    public synchronized void remove(LightwaverfSmartTransaction transaction) {
+        wheel.cancel(transaction);
+        transactions.remove(transaction.getTransactionId(), transaction);
+    }
+
+    /**
+     * @return the transactions that timed out waiting on a response, which are now {@link Status#FAILED},
+     *         and the transactions that have finished their backoff, which are now {@link Status#QUEUED}.
+     *         Their records stay in the table until they are sent again or removed.
+     */
+    public synchronized List<LightwaverfSmartTransaction> expire() {
+        List<LightwaverfSmartTransaction> expired = wheel.advance();
+        for (LightwaverfSmartTransaction transaction : expired) {
+            transaction.setStatus(transaction.getStatus() == Status.SENT ? Status.FAILED : Status.QUEUED);
+        }
+        return expired;
+    }
+
+    /**
+     * @return true if a command sent before the given {@link System#nanoTime()} is still waiting on its response
+     */
+    public synchronized boolean hasSentBefore(long nanos) {
+        for (LightwaverfSmartTransaction transaction : transactions.values()) {
+            if (transaction.getStatus() == Status.SENT && transaction.getSentTime() - nanos < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean hasTimeouts() {
+        return !wheel.isEmpty();
+    }
+
+    public long getTickNanos() {
+        return wheel.getTickNanos();
+    }
+
+    public synchronized int size() {
+        return transactions.size();
+    }
+
+    /**
+     * Removes every record, used when the websocket disconnects
+     *
+     * @return the records that were in the table
+     */
+    public synchronized List<LightwaverfSmartTransaction> drain() {
+        List<LightwaverfSmartTransaction> drained = new ArrayList<LightwaverfSmartTransaction>(transactions.values());
+        clear();
+        return drained;
+    }
+
+    public synchronized void clear() {
+        wheel.clear();
+        transactions.clear();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.lightwaverf.internal.config.LightwaverfSmartAccountConfig;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartItem;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartPayload;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartTypeAdapters;
+import org.openhab.binding.lightwaverf.internal.listeners.LightwaverfSmartListener;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Tests for how {@link LightwaverfSmartCommandManager} matches the responses to a batched message back to
+ * the commands that sent them.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartCommandManagerTest {
+
+    private static final long RESPONSE_WAIT_MILLIS = 2000;
+
+    private final Gson gson = LightwaverfSmartTypeAdapters.register(new GsonBuilder())
+            .excludeFieldsWithoutExposeAnnotation().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+
+    @Test
+    public void erroredItemsOfABatchFailStraightAway() throws InterruptedException {
+        Sent sent = new Sent();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        LightwaverfSmartCommandManager manager = start(sent, scheduler);
+        try {
+            JsonObject batch = sendBatch(manager, sent);
+            JsonArray items = batch.getAsJsonArray("items");
+            String first = items.get(0).getAsJsonObject().get("itemId").getAsString();
+            String second = items.get(1).getAsJsonObject().get("itemId").getAsString();
+            manager.onMessage("{\"class\":\"feature\",\"operation\":\"write\",\"direction\":\"response\","
+                    + "\"transactionId\":" + batch.get("transactionId") + ",\"items\":[{\"itemId\":\"" + first
+                    + "\",\"success\":true,\"payload\":{\"featureId\":\"feature-1\",\"value\":1}},{\"itemId\":\""
+                    + second + "\",\"success\":false,\"error\":{\"code\":500,\"message\":\"failed\"}}]}");
+            assertTrue(awaitNothingInFlight(manager), "the errored item should fail without waiting for its timeout");
+        } finally {
+            manager.stop();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void errorResponseFailsEveryItem() throws InterruptedException {
+        Sent sent = new Sent();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        LightwaverfSmartCommandManager manager = start(sent, scheduler);
+        try {
+            JsonObject batch = sendBatch(manager, sent);
+            JsonArray items = batch.getAsJsonArray("items");
+            String first = items.get(0).getAsJsonObject().get("itemId").getAsString();
+            String second = items.get(1).getAsJsonObject().get("itemId").getAsString();
+            manager.onMessage("{\"class\":\"feature\",\"operation\":\"write\",\"direction\":\"response\","
+                    + "\"transactionId\":" + batch.get("transactionId") + ",\"error\":\"failed\",\"items\":[{\"itemId\":\""
+                    + first + "\"},{\"itemId\":\"" + second + "\"}]}");
+            assertTrue(awaitNothingInFlight(manager), "every item should fail without waiting for its timeout");
+        } finally {
+            manager.stop();
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts a manager that doesn't retry and whose commands don't time out during a test, then logs it in
+     */
+    private LightwaverfSmartCommandManager start(Sent sent, ScheduledExecutorService scheduler)
+            throws InterruptedException {
+        LightwaverfSmartAccountConfig config = new LightwaverfSmartAccountConfig();
+        config.retries = 0;
+        config.timeout = 60000;
+        config.minTimeout = 60000;
+        config.maxTimeout = 60000;
+        config.batchSize = 2;
+        LightwaverfSmartCommandManager manager = new LightwaverfSmartCommandManager(sent, gson);
+        manager.start(config, scheduler);
+        manager.websocketConnected(true);
+        JsonObject login = sent.next();
+        assertEquals("authenticate", login.get("operation").getAsString());
+        manager.onMessage("{\"class\":\"user\",\"operation\":\"authenticate\",\"direction\":\"response\","
+                + "\"transactionId\":" + login.get("transactionId") + ",\"items\":[{\"itemId\":\""
+                + login.getAsJsonArray("items").get(0).getAsJsonObject().get("itemId").getAsString()
+                + "\",\"success\":true,\"payload\":{\"serverName\":\"test\"}}]}");
+        return manager;
+    }
+
+    /**
+     * Queues writes to two features, which are sent as one message
+     */
+    private JsonObject sendBatch(LightwaverfSmartCommandManager manager, Sent sent) throws InterruptedException {
+        manager.queueCommand(write("feature-1", 1L));
+        manager.queueCommand(write("feature-2", 0L));
+        JsonObject batch = sent.next();
+        assertEquals(2, batch.getAsJsonArray("items").size());
+        return batch;
+    }
+
+    private LightwaverfSmartRequest write(String featureid, Long value) {
+        LightwaverfSmartPayload payload = new LightwaverfSmartPayload();
+        payload.setFeatureId(featureid);
+        payload.setValue(value);
+        LightwaverfSmartItem item = new LightwaverfSmartItem();
+        item.setPayload(payload);
+        return new LightwaverfSmartRequest("feature", "write", "request", item);
+    }
+
+    private boolean awaitNothingInFlight(LightwaverfSmartCommandManager manager) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RESPONSE_WAIT_MILLIS);
+        while (manager.hasInFlightBefore(System.nanoTime())) {
+            if (System.nanoTime() > end) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Stands in for the account handler, keeping the messages the manager sends
+     */
+    private static class Sent implements LightwaverfSmartListener {
+        private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+
+        JsonObject next() throws InterruptedException {
+            @Nullable
+            String message = messages.poll(RESPONSE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (message == null) {
+                return fail("No message was sent");
+            }
+            return JsonParser.parseString(message).getAsJsonObject();
+        }
+
+        @Override
+        public void sendMessage(String message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void websocketConnected(Boolean connected) {
+        }
+
+        @Override
+        public void websocketLoggedIn() {
+        }
+
+        @Override
+        public void websocketClosing() {
+        }
+
+        @Override
+        public void handoverConnected(Boolean connected) {
+        }
+
+        @Override
+        public void onHandoverMessage(String message) {
+        }
+
+        @Override
+        public void onMessage(String message) {
+        }
+
+        @Override
+        public void flushMessages() {
+        }
+
+        @Override
+        public void tokenUpdated(String token) {
+        }
+    }
+}
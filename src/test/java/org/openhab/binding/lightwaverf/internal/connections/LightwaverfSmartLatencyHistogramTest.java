@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.connections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the buckets and percentiles of the {@link LightwaverfSmartLatencyHistogram}.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartLatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramIsZero() {
+        LightwaverfSmartLatencyHistogram histogram = new LightwaverfSmartLatencyHistogram();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMaxMillis());
+        assertEquals(0L, histogram.getPercentileMillis(50));
+        assertEquals(0L, histogram.getPercentileMillis(99));
+    }
+
+    @Test
+    public void percentileIsTheUpperBoundOfItsBucket() {
+        LightwaverfSmartLatencyHistogram histogram = new LightwaverfSmartLatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        assertEquals(100L, histogram.getCount());
+        assertEquals(100L, histogram.getMaxMillis());
+        // 50 ms is in the bucket from 32 up to 64 ms
+        assertEquals(64L, histogram.getPercentileMillis(50));
+        // 99 ms is in the bucket from 64 up to 128 ms, which is limited to the largest time recorded
+        assertEquals(100L, histogram.getPercentileMillis(99));
+        assertEquals(2L, histogram.getPercentileMillis(0), "the lowest percentile is the first bucket used");
+        assertEquals(100L, histogram.getPercentileMillis(100));
+    }
+
+    @Test
+    public void bucketBoundariesDouble() {
+        LightwaverfSmartLatencyHistogram histogram = new LightwaverfSmartLatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(2L, histogram.getPercentileMillis(50), "1 ms is in the bucket from 1 up to 2 ms");
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        assertEquals(4L, histogram.getPercentileMillis(75), "2 and 3 ms are in the bucket from 2 up to 4 ms");
+    }
+
+    @Test
+    public void subMillisecondAndNegativeTimesAreZero() {
+        LightwaverfSmartLatencyHistogram histogram = new LightwaverfSmartLatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.record(-1);
+        assertEquals(2L, histogram.getCount());
+        assertEquals(0L, histogram.getMaxMillis());
+        assertEquals(0L, histogram.getPercentileMillis(99));
+    }
+
+    @Test
+    public void longTimesGoInTheLastBucket() {
+        LightwaverfSmartLatencyHistogram histogram = new LightwaverfSmartLatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.record(TimeUnit.HOURS.toNanos(1));
+        assertEquals(TimeUnit.HOURS.toMillis(1), histogram.getMaxMillis());
+        assertEquals(TimeUnit.HOURS.toMillis(1), histogram.getPercentileMillis(100));
+        assertEquals(16L, histogram.getPercentileMillis(50));
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.converters;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.HSBType;
+
+/**
+ * Tests for {@link LightwaverfSmartColor}, checked against java.awt which the binding used before.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartColorTest {
+
+    @Test
+    public void toHSBMatchesAwtWithinOne() {
+        float[] expected = new float[3];
+        for (int rgb = 0; rgb <= 0xFFFFFF; rgb++) {
+            int red = (rgb >> 16) & 0xFF;
+            int green = (rgb >> 8) & 0xFF;
+            int blue = rgb & 0xFF;
+            Color.RGBtoHSB(red, green, blue, expected);
+            HSBType hsb = LightwaverfSmartColor.toHSB(rgb);
+            int hue = hsb.getHue().intValue();
+            int saturation = hsb.getSaturation().intValue();
+            int brightness = hsb.getBrightness().intValue();
+            // Messages are only built on a failure as this runs for every colour
+            int hueDifference = Math.floorMod(hue - Math.round(expected[0] * 360), 360);
+            if (hueDifference > 1 && hueDifference < 359) {
+                fail(String.format("Hue of %06x was %d, expected %f", rgb, hue, expected[0] * 360));
+            }
+            if (Math.abs(saturation - expected[1] * 100) > 1) {
+                fail(String.format("Saturation of %06x was %d, expected %f", rgb, saturation, expected[1] * 100));
+            }
+            if (Math.abs(brightness - expected[2] * 100) > 1) {
+                fail(String.format("Brightness of %06x was %d, expected %f", rgb, brightness, expected[2] * 100));
+            }
+        }
+    }
+
+    @Test
+    public void primariesRoundTripExactly() {
+        int[] colours = { 0xFF0000, 0x00FF00, 0x0000FF, 0xFFFF00, 0x00FFFF, 0xFF00FF };
+        for (int rgb : colours) {
+            assertEquals(rgb, roundTrip(rgb), String.format("Round trip of %06x", rgb));
+        }
+        assertEquals(0, LightwaverfSmartColor.toHSB(0xFF0000).getHue().intValue());
+        assertEquals(120, LightwaverfSmartColor.toHSB(0x00FF00).getHue().intValue());
+        assertEquals(240, LightwaverfSmartColor.toHSB(0x0000FF).getHue().intValue());
+    }
+
+    @Test
+    public void greysRoundTripWithinThree() {
+        for (int level = 0; level <= 0xFF; level++) {
+            int rgb = level * 0x010101;
+            HSBType hsb = LightwaverfSmartColor.toHSB(rgb);
+            assertEquals(0, hsb.getSaturation().intValue(), String.format("Saturation of %06x", rgb));
+            assertRoundTrip(rgb);
+        }
+        assertEquals(0x000000, roundTrip(0x000000));
+        assertEquals(0xFFFFFF, roundTrip(0xFFFFFF));
+    }
+
+    @Test
+    public void hueWrapsAt360() {
+        assertEquals(LightwaverfSmartColor.toRGB(0, 100, 100), LightwaverfSmartColor.toRGB(360, 100, 100));
+        assertEquals(LightwaverfSmartColor.toRGB(359, 100, 100), LightwaverfSmartColor.toRGB(-1, 100, 100));
+        // Just below 360 degrees rounds up to 360 which has to come back as 0
+        assertEquals(0, LightwaverfSmartColor.toHSB(0xFF0001).getHue().intValue());
+        assertEquals(359, LightwaverfSmartColor.toHSB(0xFF0004).getHue().intValue());
+        assertRoundTrip(0xFF0001);
+        assertRoundTrip(0xFF0004);
+    }
+
+    private static int roundTrip(int rgb) {
+        HSBType hsb = LightwaverfSmartColor.toHSB(rgb);
+        return LightwaverfSmartColor.toRGB(hsb.getHue().intValue(), hsb.getSaturation().intValue(),
+                hsb.getBrightness().intValue());
+    }
+
+    private static void assertRoundTrip(int rgb) {
+        int result = roundTrip(rgb);
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int expected = (rgb >> shift) & 0xFF;
+            int actual = (result >> shift) & 0xFF;
+            assertTrue(Math.abs(expected - actual) <= 3,
+                    String.format("Round trip of %06x gave %06x", rgb, result));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.converters;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * Tests for the date and time converters in {@link LightwaverfSmartStateConverters}, which decode the values
+ * from the websocket with shifts rather than through hex strings.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartStateConvertersTest {
+
+    @Test
+    public void dateDecodesYearMonthAndDay() {
+        assertDate(2021, 10, 17, 0x7e5a11);
+        assertDate(2021, 1, 1, 0x7e5101);
+        assertDate(2021, 12, 31, 0x7e5c1f);
+        assertDate(2020, 2, 29, 0x7e421d);
+        assertDate(2000, 6, 30, 0x7d061e);
+    }
+
+    @Test
+    public void invalidDateIsUndefined() {
+        // Month 0 and 13, day 0 and 32, and the 29th of February outside a leap year
+        assertEquals(UnDefType.UNDEF, convert("date", 0x7e5011));
+        assertEquals(UnDefType.UNDEF, convert("date", 0x7e5d11));
+        assertEquals(UnDefType.UNDEF, convert("date", 0x7e5a00));
+        assertEquals(UnDefType.UNDEF, convert("date", 0x7e5a20));
+        assertEquals(UnDefType.UNDEF, convert("date", 0x7e521d));
+    }
+
+    @Test
+    public void timeIsShownOnToday() {
+        assertTime(LocalTime.of(13, 30, 15), 13 * 3600 + 30 * 60 + 15);
+        assertTime(LocalTime.MIDNIGHT, 0);
+        assertTime(LocalTime.of(23, 59, 59), 86399);
+    }
+
+    @Test
+    public void timeWrapsAroundMidnight() {
+        assertTime(LocalTime.of(0, 0, 5), 86400 + 5);
+        assertTime(LocalTime.of(23, 59, 55), -5);
+    }
+
+    @Test
+    public void timeTypesShareTheConverter() {
+        assertSame(LightwaverfSmartStateConverters.get("time"), LightwaverfSmartStateConverters.get("duskTime"));
+        assertSame(LightwaverfSmartStateConverters.get("time"), LightwaverfSmartStateConverters.get("dawnTime"));
+    }
+
+    private static void assertDate(int year, int month, int day, long value) {
+        State state = convert("date", value);
+        assertTrue(state instanceof DateTimeType, String.format("%06x should be a date", value));
+        assertEquals(ZonedDateTime.of(year, month, day, 0, 0, 0, 0, ZoneOffset.UTC),
+                ((DateTimeType) state).getZonedDateTime(), String.format("Date of %06x", value));
+    }
+
+    private static void assertTime(LocalTime expected, long value) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate before = LocalDate.now(zone);
+        State state = convert("time", value);
+        LocalDate after = LocalDate.now(zone);
+        assertTrue(state instanceof DateTimeType, value + " should be a time");
+        ZonedDateTime time = ((DateTimeType) state).getZonedDateTime();
+        assertEquals(expected, time.toLocalTime());
+        // DateTimeType keeps the offset rather than the zone so compare the instant
+        assertEquals(ZonedDateTime.of(time.toLocalDate(), expected, zone).toInstant(), time.toInstant());
+        // The cached day can only change if the test runs over midnight
+        assertTrue(time.toLocalDate().equals(before) || time.toLocalDate().equals(after),
+                "Time should be on today's date but was " + time);
+    }
+
+    private static State convert(String type, long value) {
+        LightwaverfSmartStateConverter converter = LightwaverfSmartStateConverters.get(type);
+        if (converter == null) {
+            return fail(type + " should have a converter");
+        }
+        return converter.convert(value);
+    }
+}
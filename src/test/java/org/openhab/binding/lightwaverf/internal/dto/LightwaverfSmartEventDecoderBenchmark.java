@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.dto;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Measures the time and allocation of decoding websocket messages with the {@link LightwaverfSmartEventDecoder}
+ * against binding them to a {@link LightwaverfSmartRequest} with Gson. Gson's JsonReader can't be reset so the
+ * decoder allocates a reader and its buffer for every message, the gc profiler shows what that costs per message.
+ * Run from the main method, it isn't part of the unit tests.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightwaverfSmartEventDecoderBenchmark {
+
+    static final String FEATURE = "{\"version\":1,\"senderId\":\"1.ip1kmsd7s2kyb1\",\"transactionId\":5000,"
+            + "\"direction\":\"notification\",\"class\":\"feature\",\"operation\":\"event\",\"items\":"
+            + "[{\"itemId\":0,\"payload\":{\"featureId\":\"5bc4d06e87779374d29d7d9a-21-3157332334+1\","
+            + "\"value\":1234,\"_feature\":{\"featureId\":\"5bc4d06e87779374d29d7d9a-21-3157332334+1\","
+            + "\"deviceId\":\"5bc4d06e87779374d29d7d9a-21-3157332334+1\",\"featureType\":\"power\"}}}]}";
+    static final String BATCHED = batched(10);
+    static final String ERROR = "{\"version\":1,\"senderId\":\"1.ip1kmsd7s2kyb1\",\"transactionId\":5001,"
+            + "\"direction\":\"response\",\"class\":\"feature\",\"operation\":\"write\",\"items\":"
+            + "[{\"itemId\":\"5001\",\"success\":false,\"error\":{\"code\":404,"
+            + "\"message\":\"Feature not found\"}}]}";
+
+    private final LightwaverfSmartEvent event = new LightwaverfSmartEvent();
+    private final Gson gson = LightwaverfSmartTypeAdapters.register(new GsonBuilder())
+            .excludeFieldsWithoutExposeAnnotation().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+
+    /**
+     * @return a write response with the given number of items, as sent for a batch of commands
+     */
+    static String batched(int items) {
+        StringBuilder builder = new StringBuilder("{\"version\":1,\"senderId\":\"1.ip1kmsd7s2kyb1\","
+                + "\"transactionId\":6000,\"direction\":\"response\",\"class\":\"feature\","
+                + "\"operation\":\"write\",\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"itemId\":\"").append(6000 + i).append("\",\"success\":true,\"payload\":")
+                    .append("{\"featureId\":\"5bc4d06e87779374d29d7d9a-").append(i)
+                    .append("-3157332334+1\",\"value\":").append(i).append("}}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    @Benchmark
+    public void decodeFeature(Blackhole blackhole) throws IOException {
+        LightwaverfSmartEventDecoder.decode(FEATURE, event);
+        blackhole.consume(event.getItem(0).getValue());
+    }
+
+    @Benchmark
+    public void decodeBatched(Blackhole blackhole) throws IOException {
+        LightwaverfSmartEventDecoder.decode(BATCHED, event);
+        blackhole.consume(event.getItemCount());
+    }
+
+    @Benchmark
+    public void decodeError(Blackhole blackhole) throws IOException {
+        LightwaverfSmartEventDecoder.decode(ERROR, event);
+        blackhole.consume(event.getItem(0).hasError());
+    }
+
+    @Benchmark
+    public void bindFeature(Blackhole blackhole) {
+        blackhole.consume(gson.fromJson(FEATURE, LightwaverfSmartRequest.class));
+    }
+
+    @Benchmark
+    public void bindBatched(Blackhole blackhole) {
+        blackhole.consume(gson.fromJson(BATCHED, LightwaverfSmartRequest.class));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LightwaverfSmartEventDecoderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.dto;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link LightwaverfSmartEventDecoder} with the feature events, batched responses and errors
+ * sent by the websocket.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartEventDecoderTest {
+
+    private final LightwaverfSmartEvent event = new LightwaverfSmartEvent();
+
+    @Test
+    public void featureEventIsDecoded() throws IOException {
+        LightwaverfSmartEventDecoder.decode("{\"version\":1,\"senderId\":\"1.ip1kmsd7s2kyb1\",\"transactionId\":5000,"
+                + "\"direction\":\"notification\",\"class\":\"feature\",\"operation\":\"event\",\"items\":[{\"itemId\":0,"
+                + "\"payload\":{\"featureId\":\"5bc4d06e-21+1\",\"value\":1234,\"_feature\":{\"featureType\":\"power\"}}}]}",
+                event);
+        assertEquals("feature", event.getClass_());
+        assertEquals("event", event.getOperation());
+        assertEquals("notification", event.getDirection());
+        assertEquals(Integer.valueOf(5000), event.getTransactionId());
+        assertFalse(event.hasError());
+        assertEquals(1, event.getItemCount());
+        LightwaverfSmartEvent.Item item = event.getItem(0);
+        assertEquals("0", item.getItemId());
+        assertFalse(item.hasError());
+        assertTrue(item.hasPayload());
+        assertEquals("5bc4d06e-21+1", item.getFeatureId());
+        assertTrue(item.hasValue());
+        assertEquals(1234L, item.getValue());
+    }
+
+    @Test
+    public void batchedResponseKeepsEachItem() throws IOException {
+        LightwaverfSmartEventDecoder.decode("{\"transactionId\":6000,\"direction\":\"response\",\"class\":\"feature\","
+                + "\"operation\":\"write\",\"items\":[{\"itemId\":\"6000\",\"success\":true,\"payload\":{\"featureId\":"
+                + "\"a\",\"value\":1}},{\"itemId\":\"6001\",\"success\":true,\"payload\":{\"featureId\":\"b\"}},"
+                + "{\"itemId\":\"6002\",\"success\":false}]}", event);
+        assertEquals(3, event.getItemCount());
+        assertEquals("6000", event.getItem(0).getItemId());
+        assertTrue(event.getItem(0).getSuccess());
+        assertEquals(1L, event.getItem(0).getValue());
+        assertEquals("b", event.getItem(1).getFeatureId());
+        assertFalse(event.getItem(1).hasValue(), "an item without a value shouldn't have one");
+        assertEquals("6002", event.getItem(2).getItemId());
+        assertFalse(event.getItem(2).getSuccess());
+        assertFalse(event.getItem(2).hasPayload());
+    }
+
+    @Test
+    public void itemErrorIsDecoded() throws IOException {
+        LightwaverfSmartEventDecoder.decode("{\"transactionId\":5001,\"direction\":\"response\",\"class\":\"feature\","
+                + "\"operation\":\"write\",\"items\":[{\"itemId\":\"5001\",\"success\":false,\"error\":{\"code\":404,"
+                + "\"message\":\"Feature not found\"}}]}", event);
+        assertFalse(event.hasError(), "an item error isn't an error for the whole message");
+        LightwaverfSmartEvent.Item item = event.getItem(0);
+        assertTrue(item.hasError());
+        assertEquals(Integer.valueOf(404), item.getErrorCode());
+        assertEquals("Feature not found", item.getErrorMessage());
+    }
+
+    @Test
+    public void messageErrorIsDecoded() throws IOException {
+        LightwaverfSmartEventDecoder.decode("{\"transactionId\":5002,\"direction\":\"response\",\"class\":\"feature\","
+                + "\"operation\":\"read\",\"error\":\"Invalid request\",\"items\":null}", event);
+        assertTrue(event.hasError());
+        assertEquals(0, event.getItemCount());
+        LightwaverfSmartEventDecoder.decode("{\"class\":\"feature\",\"error\":null}", event);
+        assertFalse(event.hasError(), "a null error isn't an error");
+    }
+
+    @Test
+    public void reusedEventIsReset() throws IOException {
+        LightwaverfSmartEventDecoder.decode("{\"transactionId\":1,\"class\":\"feature\",\"error\":\"failed\",\"items\":"
+                + "[{\"itemId\":\"1\",\"error\":{\"code\":500},\"payload\":{\"featureId\":\"a\",\"value\":1}}]}", event);
+        LightwaverfSmartEventDecoder.decode("{\"class\":\"user\",\"items\":[{\"itemId\":\"2\"}]}", event);
+        assertEquals("user", event.getClass_());
+        assertNull(event.getTransactionId());
+        assertFalse(event.hasError());
+        assertEquals(1, event.getItemCount());
+        LightwaverfSmartEvent.Item item = event.getItem(0);
+        assertFalse(item.hasError());
+        assertNull(item.getErrorCode());
+        assertFalse(item.hasPayload());
+        assertNull(item.getFeatureId());
+        assertFalse(item.hasValue());
+    }
+
+    @Test
+    public void invalidMessageThrows() {
+        assertThrows(IOException.class, () -> LightwaverfSmartEventDecoder.decode("{\"class\":", event));
+    }
+}
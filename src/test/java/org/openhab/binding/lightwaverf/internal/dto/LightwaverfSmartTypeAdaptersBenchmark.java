@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Compares writing commands and reading responses with the {@link LightwaverfSmartTypeAdapters} against gson's
+ * reflective adapters for the same classes. Run from the main method, it isn't part of the unit tests.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightwaverfSmartTypeAdaptersBenchmark {
+
+    private static final String LOGIN_RESPONSE = "{\"version\":1,\"class\":\"user\",\"operation\":\"authenticate\","
+            + "\"direction\":\"response\",\"transactionId\":1,\"items\":[{\"itemId\":\"0\",\"success\":true,"
+            + "\"payload\":{\"serverName\":\"server-1\",\"connectionId\":\"connection\"}}]}";
+
+    private final Gson adapters = LightwaverfSmartTypeAdapters.register(new GsonBuilder())
+            .excludeFieldsWithoutExposeAnnotation().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+    private final Gson reflective = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+            .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+    private final LightwaverfSmartRequest write = batch(1);
+    private final LightwaverfSmartRequest batch = batch(10);
+
+    private static LightwaverfSmartRequest batch(int size) {
+        List<LightwaverfSmartItem> items = new ArrayList<LightwaverfSmartItem>(size);
+        for (int i = 0; i < size; i++) {
+            LightwaverfSmartPayload payload = new LightwaverfSmartPayload();
+            payload.setFeatureId("5bc4d06e87779374d29d7d9a-" + i + "-3157332334+1");
+            payload.setValue((long) i);
+            LightwaverfSmartItem item = new LightwaverfSmartItem();
+            item.setItemId(String.valueOf(1000 + i));
+            item.setPayload(payload);
+            items.add(item);
+        }
+        LightwaverfSmartRequest request = new LightwaverfSmartRequest("feature", "write", "request", items);
+        request.setSenderId("d2b4bd33-1a5e-4dbb-a7a4-b8c2a2e0e4f3");
+        request.setTransactionId(1000);
+        return request;
+    }
+
+    @Benchmark
+    public void writeAdapter(Blackhole blackhole) {
+        blackhole.consume(adapters.toJson(write));
+    }
+
+    @Benchmark
+    public void writeReflective(Blackhole blackhole) {
+        blackhole.consume(reflective.toJson(write));
+    }
+
+    @Benchmark
+    public void writeBatchAdapter(Blackhole blackhole) {
+        blackhole.consume(adapters.toJson(batch));
+    }
+
+    @Benchmark
+    public void writeBatchReflective(Blackhole blackhole) {
+        blackhole.consume(reflective.toJson(batch));
+    }
+
+    @Benchmark
+    public void readAdapter(Blackhole blackhole) {
+        blackhole.consume(adapters.fromJson(LOGIN_RESPONSE, LightwaverfSmartRequest.class));
+    }
+
+    @Benchmark
+    public void readReflective(Blackhole blackhole) {
+        blackhole.consume(reflective.fromJson(LOGIN_RESPONSE, LightwaverfSmartRequest.class));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LightwaverfSmartTypeAdaptersBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
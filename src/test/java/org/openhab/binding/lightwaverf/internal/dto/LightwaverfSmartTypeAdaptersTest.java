@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.dto;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Tests that the {@link LightwaverfSmartTypeAdapters} write and read the websocket messages the same as gson
+ * does by reflection from the annotations on the classes.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartTypeAdaptersTest {
+
+    private final Gson adapters = LightwaverfSmartTypeAdapters.register(new GsonBuilder())
+            .excludeFieldsWithoutExposeAnnotation().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+    private final Gson reflective = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+            .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+
+    @Test
+    public void loginRequestIsWrittenAsByReflection() {
+        LightwaverfSmartRequest login = new LightwaverfSmartRequest("token", "client-uuid");
+        login.setSenderId("sender");
+        login.setTransactionId(1);
+        assertWritten(login);
+    }
+
+    @Test
+    public void writeRequestIsWrittenAsByReflection() {
+        LightwaverfSmartRequest write = new LightwaverfSmartRequest("feature", "write", "request",
+                item("2", "5bc4d06e-21+1", 75L));
+        write.setSenderId("sender");
+        write.setTransactionId(2);
+        assertWritten(write);
+    }
+
+    @Test
+    public void batchedRequestIsWrittenAsByReflection() {
+        List<LightwaverfSmartItem> items = new ArrayList<LightwaverfSmartItem>();
+        for (int i = 0; i < 5; i++) {
+            items.add(item(String.valueOf(10 + i), "feature-" + i, (long) i));
+        }
+        LightwaverfSmartRequest batch = new LightwaverfSmartRequest("feature", "write", "request", items);
+        batch.setTransactionId(10);
+        assertWritten(batch);
+    }
+
+    @Test
+    public void nullFieldsAreLeftOutAsByReflection() {
+        assertWritten(new LightwaverfSmartRequest());
+        LightwaverfSmartRequest request = new LightwaverfSmartRequest("feature", "read", "request",
+                new LightwaverfSmartItem());
+        request.getItems().get(0).setPayload(new LightwaverfSmartPayload());
+        request.getItems().get(0).setError(new LightwaverfSmartError());
+        assertWritten(request);
+        request.setItems(null);
+        assertWritten(request);
+    }
+
+    @Test
+    public void responsesAreReadAsByReflection() {
+        assertRead("{\"version\":1,\"senderId\":\"1.ip1kmsd7s2kyb1\",\"transactionId\":5000,\"direction\":"
+                + "\"notification\",\"class\":\"feature\",\"operation\":\"event\",\"items\":[{\"itemId\":0,"
+                + "\"payload\":{\"featureId\":\"5bc4d06e-21+1\",\"value\":1234,\"_feature\":{\"featureId\":"
+                + "\"5bc4d06e-21+1\",\"deviceId\":\"5bc4d06e-21\",\"productCode\":\"L42\",\"featureType\":\"power\"}}}]}");
+        assertRead("{\"class\":\"user\",\"operation\":\"authenticate\",\"direction\":\"response\",\"transactionId\":1,"
+                + "\"items\":[{\"itemId\":\"0\",\"success\":true,\"payload\":{\"serverName\":\"server-1\","
+                + "\"handlerId\":\"handler\",\"deviceId\":3,\"channel\":1,\"writable\":true,\"stateless\":false,"
+                + "\"virtual\":false,\"status\":\"ok\",\"connectionId\":\"connection\"}}]}");
+        assertRead("{\"class\":\"feature\",\"operation\":\"write\",\"direction\":\"response\",\"transactionId\":2,"
+                + "\"items\":[{\"itemId\":\"2\",\"success\":false,\"error\":{\"source\":\"feature\",\"group\":1,"
+                + "\"code\":404,\"message\":\"Feature not found\"}}],\"unknown\":{\"nested\":[1,2]}}");
+    }
+
+    @Test
+    public void missingItemsAndNullFieldsAreReadAsByReflection() {
+        assertRead("{\"class\":\"server\",\"operation\":\"closing\",\"direction\":\"notification\"}");
+        assertRead("{\"class\":null,\"senderId\":null,\"transactionId\":null,\"error\":null,\"items\":[{\"itemId\":"
+                + "null,\"success\":null,\"payload\":null,\"error\":null}]}");
+        assertRead("{\"items\":[{\"payload\":{\"featureId\":null,\"value\":null,\"_feature\":null}}]}");
+        assertRead("{\"error\":\"Invalid request\",\"items\":[]}");
+    }
+
+    private LightwaverfSmartItem item(String itemid, String featureid, Long value) {
+        LightwaverfSmartPayload payload = new LightwaverfSmartPayload();
+        payload.setFeatureId(featureid);
+        payload.setValue(value);
+        LightwaverfSmartItem item = new LightwaverfSmartItem();
+        item.setItemId(itemid);
+        item.setPayload(payload);
+        return item;
+    }
+
+    private void assertWritten(LightwaverfSmartRequest request) {
+        assertEquals(reflective.toJson(request), adapters.toJson(request));
+    }
+
+    /**
+     * Reads the message both ways then compares what was read by writing it out by reflection
+     */
+    private void assertRead(String message) {
+        LightwaverfSmartRequest expected = reflective.fromJson(message, LightwaverfSmartRequest.class);
+        LightwaverfSmartRequest actual = adapters.fromJson(message, LightwaverfSmartRequest.class);
+        assertEquals(reflective.toJson(expected), reflective.toJson(actual), message);
+    }
+}
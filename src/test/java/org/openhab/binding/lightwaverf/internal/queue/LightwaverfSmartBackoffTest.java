@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the retry delays of the {@link LightwaverfSmartBackoff} and the response timeout of the
+ * {@link LightwaverfSmartRttEstimator}.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartBackoffTest {
+
+    private static final long SEED = 42;
+    private static final long BASE = 250;
+    private static final long MAX = 30000;
+
+    @Test
+    public void delaysStayWithinTheDecorrelatedJitterBounds() {
+        LightwaverfSmartBackoff backoff = new LightwaverfSmartBackoff(BASE, MAX, new Random(SEED));
+        long previous = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.next(previous);
+            long upper = Math.min(MAX, Math.max(BASE, previous) * 3);
+            assertTrue(delay >= BASE && delay <= upper,
+                    "delay " + delay + " after " + previous + " should be between " + BASE + " and " + upper);
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void firstDelayIsUpToThreeTimesTheBase() {
+        LightwaverfSmartBackoff backoff = new LightwaverfSmartBackoff(BASE, MAX, new Random(SEED));
+        boolean above = false;
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.next(0);
+            assertTrue(delay >= BASE && delay <= BASE * 3, "first delay " + delay + " is out of bounds");
+            above |= delay > BASE;
+        }
+        assertTrue(above, "the first delay should be jittered");
+    }
+
+    @Test
+    public void delaysAreCappedAtTheMaximum() {
+        LightwaverfSmartBackoff backoff = new LightwaverfSmartBackoff(BASE, MAX, new Random(SEED));
+        long highest = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.next(MAX);
+            assertTrue(delay <= MAX, "delay " + delay + " is over the maximum");
+            highest = Math.max(highest, delay);
+        }
+        assertTrue(highest > MAX / 2, "delays after a long one should reach towards the maximum");
+    }
+
+    @Test
+    public void maximumBelowTheBaseGivesTheBase() {
+        LightwaverfSmartBackoff backoff = new LightwaverfSmartBackoff(BASE, BASE / 2, new Random(SEED));
+        assertEquals(BASE, backoff.next(0));
+        assertEquals(BASE, backoff.next(BASE * 10));
+    }
+
+    @Test
+    public void sameSeedGivesTheSameDelays() {
+        LightwaverfSmartBackoff first = new LightwaverfSmartBackoff(BASE, MAX, new Random(SEED));
+        LightwaverfSmartBackoff second = new LightwaverfSmartBackoff(BASE, MAX, new Random(SEED));
+        long previous = 0;
+        for (int i = 0; i < 20; i++) {
+            long delay = first.next(previous);
+            assertEquals(delay, second.next(previous));
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void initialTimeoutIsClamped() {
+        assertEquals(500L, new LightwaverfSmartRttEstimator(0, 500, 10000).getTimeoutNanos());
+        assertEquals(10000L, new LightwaverfSmartRttEstimator(60000, 500, 10000).getTimeoutNanos());
+        assertEquals(2000L, new LightwaverfSmartRttEstimator(2000, 500, 10000).getTimeoutNanos());
+        // A maximum below the minimum is raised to it
+        assertEquals(500L, new LightwaverfSmartRttEstimator(2000, 500, 100).getTimeoutNanos());
+    }
+
+    @Test
+    public void timeoutFollowsTheRoundTripTime() {
+        LightwaverfSmartRttEstimator rtt = new LightwaverfSmartRttEstimator(2000, 100, 100000);
+        // The first sample sets the smoothed time with half of it as the variation
+        rtt.update(1000);
+        assertEquals(1000L, rtt.getSmoothedRttNanos());
+        assertEquals(3000L, rtt.getTimeoutNanos());
+        rtt.update(1800);
+        // variation 500 + (800 - 500) / 4, smoothed 1000 + 800 / 8
+        assertEquals(1100L, rtt.getSmoothedRttNanos());
+        assertEquals(1100L + 4 * 575, rtt.getTimeoutNanos());
+    }
+
+    @Test
+    public void timeoutIsClampedToItsBounds() {
+        LightwaverfSmartRttEstimator rtt = new LightwaverfSmartRttEstimator(2000, 500, 10000);
+        rtt.update(10);
+        assertEquals(500L, rtt.getTimeoutNanos(), "a fast response shouldn't go under the minimum");
+        rtt.update(1000000);
+        assertEquals(10000L, rtt.getTimeoutNanos(), "a slow response shouldn't go over the maximum");
+    }
+
+    @Test
+    public void backoffDoublesUpToTheMaximum() {
+        LightwaverfSmartRttEstimator rtt = new LightwaverfSmartRttEstimator(2000, 500, 10000);
+        rtt.backoff();
+        assertEquals(4000L, rtt.getTimeoutNanos());
+        rtt.backoff();
+        assertEquals(8000L, rtt.getTimeoutNanos());
+        rtt.backoff();
+        assertEquals(10000L, rtt.getTimeoutNanos());
+        rtt.update(1000);
+        assertEquals(3000L, rtt.getTimeoutNanos(), "a new sample replaces the backed off timeout");
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartItem;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
+
+/**
+ * Tests for the overflow policies, time to live and lanes of the {@link LightwaverfSmartCommandQueue}.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartCommandQueueTest {
+
+    private static final long TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    public void dropOldestDropsTheOldestOfAnyLane() {
+        LightwaverfSmartCommandQueue queue = queue(2, LightwaverfSmartOverflowPolicy.DROP_OLDEST);
+        LightwaverfSmartRequest oldest = write(1);
+        assertNull(queue.offer(oldest));
+        assertNull(queue.offer(read(2)));
+        assertSame(oldest, queue.offer(write(3)));
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.size(LightwaverfSmartLane.READ));
+    }
+
+    @Test
+    public void dropReadsDropsAReadBeforeAnOlderWrite() {
+        LightwaverfSmartCommandQueue queue = queue(2, LightwaverfSmartOverflowPolicy.DROP_READS);
+        assertNull(queue.offer(write(1)));
+        LightwaverfSmartRequest read = read(2);
+        assertNull(queue.offer(read));
+        assertSame(read, queue.offer(write(3)));
+        assertEquals(2, queue.size(LightwaverfSmartLane.WRITE));
+    }
+
+    @Test
+    public void dropReadsDropsTheOldestWithoutReads() {
+        LightwaverfSmartCommandQueue queue = queue(2, LightwaverfSmartOverflowPolicy.DROP_READS);
+        LightwaverfSmartRequest oldest = write(1);
+        assertNull(queue.offer(oldest));
+        assertNull(queue.offer(write(2)));
+        assertSame(oldest, queue.offer(write(3)));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void rejectKeepsTheQueuedCommands() {
+        LightwaverfSmartCommandQueue queue = queue(1, LightwaverfSmartOverflowPolicy.REJECT);
+        LightwaverfSmartRequest queued = write(1);
+        assertNull(queue.offer(queued));
+        LightwaverfSmartRequest rejected = read(2);
+        assertSame(rejected, queue.offer(rejected), "the new command should be rejected");
+        assertEquals(1, queue.size());
+        assertSame(queued, queue.poll());
+    }
+
+    @Test
+    public void loginsAreQueuedWhenFull() {
+        for (LightwaverfSmartOverflowPolicy policy : LightwaverfSmartOverflowPolicy.values()) {
+            LightwaverfSmartCommandQueue queue = queue(1, policy);
+            assertNull(queue.offer(write(1)));
+            LightwaverfSmartRequest login = login(2);
+            assertNull(queue.offer(login), "a login shouldn't drop anything with " + policy);
+            assertEquals(2, queue.size());
+            assertSame(login, queue.poll(), "a login is sent first with " + policy);
+        }
+    }
+
+    @Test
+    public void policyIsReadFromTheConfig() {
+        assertEquals(LightwaverfSmartOverflowPolicy.DROP_OLDEST, LightwaverfSmartOverflowPolicy.fromConfig("dropOldest"));
+        assertEquals(LightwaverfSmartOverflowPolicy.DROP_READS, LightwaverfSmartOverflowPolicy.fromConfig("dropReads"));
+        assertEquals(LightwaverfSmartOverflowPolicy.REJECT, LightwaverfSmartOverflowPolicy.fromConfig("reject"));
+        assertEquals(LightwaverfSmartOverflowPolicy.DROP_OLDEST, LightwaverfSmartOverflowPolicy.fromConfig("other"));
+    }
+
+    @Test
+    public void commandExpiresAfterItsTimeToLive() throws InterruptedException {
+        LightwaverfSmartCommandQueue queue = queue(10, LightwaverfSmartOverflowPolicy.DROP_OLDEST);
+        queue.setTimeToLive(TTL_NANOS);
+        LightwaverfSmartRequest command = write(1);
+        LightwaverfSmartRequest login = login(2);
+        queue.offer(command);
+        queue.offer(login);
+        assertFalse(queue.isExpired(command), "a new command shouldn't have expired");
+        TimeUnit.NANOSECONDS.sleep(TTL_NANOS * 2);
+        assertTrue(queue.isExpired(command), "the command has been queued longer than its time to live");
+        assertFalse(queue.isExpired(login), "logins never expire");
+        queue.setTimeToLive(0);
+        assertFalse(queue.isExpired(command), "a time to live of 0 keeps commands until they are sent");
+    }
+
+    @Test
+    public void retryTimeToLiveStartsWhenItIsQueuedAgain() throws InterruptedException {
+        LightwaverfSmartCommandQueue queue = queue(10, LightwaverfSmartOverflowPolicy.DROP_OLDEST);
+        queue.setTimeToLive(TTL_NANOS);
+        LightwaverfSmartRequest command = write(1);
+        queue.offer(command);
+        assertSame(command, queue.poll());
+        // Sent then backed off for longer than the time to live
+        TimeUnit.NANOSECONDS.sleep(TTL_NANOS * 2);
+        queue.offer(write(2));
+        queue.retry(command);
+        assertFalse(queue.isExpired(command), "the backoff shouldn't count against the time to live");
+        assertSame(command, queue.poll(), "a retry goes to the front of its lane");
+    }
+
+    @Test
+    public void heldCommandKeepsItsQueuedTime() throws InterruptedException {
+        LightwaverfSmartCommandQueue queue = queue(10, LightwaverfSmartOverflowPolicy.DROP_OLDEST);
+        queue.setTimeToLive(TTL_NANOS);
+        LightwaverfSmartRequest command = write(1);
+        queue.offer(command);
+        assertSame(command, queue.poll());
+        TimeUnit.NANOSECONDS.sleep(TTL_NANOS * 2);
+        queue.addFirst(command);
+        assertTrue(queue.isExpired(command), "a command put back after being held is still the same age");
+    }
+
+    @Test
+    public void writesTakeTurnsWithReads() {
+        LightwaverfSmartCommandQueue queue = queue(100, LightwaverfSmartOverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(write(i));
+        }
+        LightwaverfSmartRequest read = read(100);
+        queue.offer(read);
+        int weight = LightwaverfSmartLane.WRITE.getWeight();
+        for (int i = 0; i < weight; i++) {
+            assertEquals("write", operation(queue.poll()));
+        }
+        assertSame(read, queue.poll(), "the read should get its turn after a round of writes");
+        assertEquals("write", operation(queue.poll()));
+    }
+
+    @Test
+    public void onlyLoginsAreTakenUntilLoggedIn() {
+        LightwaverfSmartCommandQueue queue = queue(10, LightwaverfSmartOverflowPolicy.DROP_OLDEST);
+        queue.setLoginsOnly(true);
+        queue.offer(write(1));
+        assertNull(queue.poll());
+        LightwaverfSmartRequest login = login(2);
+        queue.offer(login);
+        assertSame(login, queue.poll());
+        queue.setLoginsOnly(false);
+        assertEquals("write", operation(queue.poll()));
+    }
+
+    private static String operation(@Nullable LightwaverfSmartRequest command) {
+        if (command == null) {
+            return fail("No command was taken from the queue");
+        }
+        return command.getOperation();
+    }
+
+    private static LightwaverfSmartCommandQueue queue(int capacity, LightwaverfSmartOverflowPolicy policy) {
+        LightwaverfSmartCommandQueue queue = new LightwaverfSmartCommandQueue();
+        queue.setCapacity(capacity, policy);
+        return queue;
+    }
+
+    private static LightwaverfSmartRequest write(int transactionid) {
+        return command("feature", "write", transactionid);
+    }
+
+    private static LightwaverfSmartRequest read(int transactionid) {
+        return command("feature", "read", transactionid);
+    }
+
+    private static LightwaverfSmartRequest login(int transactionid) {
+        LightwaverfSmartRequest command = new LightwaverfSmartRequest("token", "client");
+        command.setTransactionId(transactionid);
+        return command;
+    }
+
+    private static LightwaverfSmartRequest command(String class_, String operation, int transactionid) {
+        LightwaverfSmartRequest command = new LightwaverfSmartRequest(class_, operation, "request",
+                new LightwaverfSmartItem());
+        command.setTransactionId(transactionid);
+        return command;
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.lightwaverf.internal.queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartItem;
+import org.openhab.binding.lightwaverf.internal.dto.LightwaverfSmartRequest;
+import org.openhab.binding.lightwaverf.internal.queue.LightwaverfSmartTransaction.Status;
+
+/**
+ * Tests for the {@link LightwaverfSmartTimerWheel} and the {@link LightwaverfSmartTransactionTable} that uses it
+ * for the response timeouts. The wheel runs on {@link System#nanoTime()} so the tests wait for real ticks.
+ *
+ * @author David Murton - Initial contribution
+ */
+@NonNullByDefault
+public class LightwaverfSmartTimerWheelTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void expiresOnceTheDeadlineHasPassed() throws InterruptedException {
+        LightwaverfSmartTimerWheel wheel = new LightwaverfSmartTimerWheel(TICK_NANOS, 8);
+        LightwaverfSmartTransaction transaction = transaction(1);
+        wheel.schedule(transaction, TICK_NANOS * 5);
+        assertTrue(wheel.advance().isEmpty(), "nothing should expire before the deadline");
+        assertFalse(wheel.isEmpty());
+        sleepTicks(7);
+        List<LightwaverfSmartTransaction> expired = wheel.advance();
+        assertEquals(1, expired.size());
+        assertSame(transaction, expired.get(0));
+        assertTrue(wheel.isEmpty());
+        assertFalse(wheel.cancel(transaction), "an expired transaction is no longer scheduled");
+    }
+
+    @Test
+    public void zeroDelayExpiresOnTheNextTick() throws InterruptedException {
+        LightwaverfSmartTimerWheel wheel = new LightwaverfSmartTimerWheel(TICK_NANOS, 8);
+        LightwaverfSmartTransaction transaction = transaction(1);
+        wheel.schedule(transaction, 0);
+        sleepTicks(2);
+        assertEquals(1, wheel.advance().size());
+    }
+
+    @Test
+    public void deadlineBeyondOneTurnWaitsForItsTurn() throws InterruptedException {
+        // 4 buckets, so the deadline is two and a half turns of the wheel away
+        LightwaverfSmartTimerWheel wheel = new LightwaverfSmartTimerWheel(TICK_NANOS, 4);
+        LightwaverfSmartTransaction transaction = transaction(1);
+        wheel.schedule(transaction, TICK_NANOS * 10);
+        long deadline = System.nanoTime() + TICK_NANOS * 10;
+        // Its bucket comes round twice before the deadline
+        while (deadline - System.nanoTime() > TICK_NANOS * 2) {
+            assertTrue(wheel.advance().isEmpty(), "expired before its deadline");
+            sleepTicks(1);
+        }
+        sleepTicks(4);
+        assertEquals(1, wheel.advance().size());
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void advancingSeveralTurnsAtOnceExpiresEverything() throws InterruptedException {
+        LightwaverfSmartTimerWheel wheel = new LightwaverfSmartTimerWheel(TICK_NANOS, 4);
+        for (int i = 0; i < 6; i++) {
+            wheel.schedule(transaction(i), TICK_NANOS * (i + 1));
+        }
+        sleepTicks(12);
+        assertEquals(6, wheel.advance().size());
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void cancelledTransactionDoesNotExpire() throws InterruptedException {
+        LightwaverfSmartTimerWheel wheel = new LightwaverfSmartTimerWheel(TICK_NANOS, 8);
+        LightwaverfSmartTransaction first = transaction(1);
+        LightwaverfSmartTransaction second = transaction(2);
+        LightwaverfSmartTransaction third = transaction(3);
+        // All in the same bucket, the middle of its list is cancelled
+        wheel.schedule(first, TICK_NANOS * 3);
+        wheel.schedule(second, TICK_NANOS * 3);
+        wheel.schedule(third, TICK_NANOS * 3);
+        assertTrue(wheel.cancel(second));
+        assertFalse(wheel.cancel(second), "a transaction can only be cancelled once");
+        sleepTicks(5);
+        List<LightwaverfSmartTransaction> expired = wheel.advance();
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains(first) && expired.contains(third), "the others should still expire");
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void rescheduleReplacesTheDeadline() throws InterruptedException {
+        LightwaverfSmartTimerWheel wheel = new LightwaverfSmartTimerWheel(TICK_NANOS, 8);
+        LightwaverfSmartTransaction transaction = transaction(1);
+        wheel.schedule(transaction, TICK_NANOS * 2);
+        wheel.schedule(transaction, TICK_NANOS * 30);
+        sleepTicks(4);
+        assertTrue(wheel.advance().isEmpty(), "the first deadline should have been cancelled");
+        wheel.clear();
+        assertTrue(wheel.isEmpty());
+        assertFalse(wheel.cancel(transaction));
+    }
+
+    @Test
+    public void tableRecordsSentCommands() {
+        LightwaverfSmartTransactionTable table = new LightwaverfSmartTransactionTable(2, TICK_NANOS, 8);
+        LightwaverfSmartTransaction transaction = table.send(command(1), "device", 1, TICK_NANOS * 100);
+        assertNotNull(transaction, "the command should be recorded");
+        assertEquals(Status.SENT, transaction.getStatus());
+        assertEquals(1, transaction.getAttempts());
+        assertEquals("device", transaction.getKey());
+        assertSame(transaction, table.get(1));
+        assertNotNull(table.send(command(2), "other", 1, TICK_NANOS * 100));
+        assertNull(table.send(command(3), "another", 1, TICK_NANOS * 100), "the table is full");
+        assertTrue(table.hasSentBefore(System.nanoTime()));
+    }
+
+    @Test
+    public void completedCommandIsRemoved() throws InterruptedException {
+        LightwaverfSmartTransactionTable table = new LightwaverfSmartTransactionTable(10, TICK_NANOS, 8);
+        table.send(command(1), "device", 1, TICK_NANOS * 2);
+        LightwaverfSmartTransaction transaction = table.complete(1);
+        assertNotNull(transaction, "the command was waiting on a response");
+        assertEquals(Status.COMPLETE, transaction.getStatus());
+        assertNull(table.complete(1), "a response is only matched once");
+        assertEquals(0, table.size());
+        assertFalse(table.hasTimeouts());
+        sleepTicks(4);
+        assertTrue(table.expire().isEmpty(), "a completed command shouldn't time out");
+    }
+
+    @Test
+    public void timedOutCommandFailsAndIsEvictedWhenRemoved() throws InterruptedException {
+        LightwaverfSmartTransactionTable table = new LightwaverfSmartTransactionTable(10, TICK_NANOS, 8);
+        table.send(command(1), "device", 1, TICK_NANOS * 2);
+        sleepTicks(4);
+        List<LightwaverfSmartTransaction> expired = table.expire();
+        assertEquals(1, expired.size());
+        LightwaverfSmartTransaction transaction = expired.get(0);
+        assertEquals(Status.FAILED, transaction.getStatus());
+        assertNull(table.complete(1), "a late response doesn't complete a failed command");
+        assertEquals(1, table.size(), "the record is kept until it's retried or removed");
+        table.remove(transaction);
+        assertEquals(0, table.size());
+        assertNull(table.get(1));
+    }
+
+    @Test
+    public void backoffRequeuesAndKeepsTheRecord() throws InterruptedException {
+        LightwaverfSmartTransactionTable table = new LightwaverfSmartTransactionTable(10, TICK_NANOS, 8);
+        LightwaverfSmartRequest command = command(1);
+        table.send(command, "device", 1, TICK_NANOS * 100);
+        LightwaverfSmartTransaction transaction = table.fail(1);
+        assertNotNull(transaction, "the command was waiting on a response");
+        table.backoff(transaction, TICK_NANOS * 2);
+        assertEquals(Status.BACKOFF, transaction.getStatus());
+        assertFalse(table.isRetry(1));
+        sleepTicks(4);
+        assertEquals(1, table.expire().size());
+        assertEquals(Status.QUEUED, transaction.getStatus());
+        assertTrue(table.isRetry(1));
+        assertSame(transaction, table.send(command, "device", 1, TICK_NANOS * 100));
+        assertEquals(2, transaction.getAttempts());
+    }
+
+    @Test
+    public void commandsSentBeforeATimeAreFailed() throws InterruptedException {
+        LightwaverfSmartTransactionTable table = new LightwaverfSmartTransactionTable(10, TICK_NANOS, 8);
+        table.send(command(1), "first", 1, TICK_NANOS * 100);
+        table.send(command(2), "second", 1, TICK_NANOS * 100);
+        sleepTicks(1);
+        long switched = System.nanoTime();
+        sleepTicks(1);
+        table.send(command(3), "third", 1, TICK_NANOS * 100);
+        List<LightwaverfSmartTransaction> failed = table.failSentBefore(switched);
+        assertEquals(2, failed.size());
+        assertEquals(Integer.valueOf(1), failed.get(0).getTransactionId());
+        assertEquals(Integer.valueOf(2), failed.get(1).getTransactionId());
+        assertEquals(Status.FAILED, failed.get(0).getStatus());
+        assertFalse(table.hasSentBefore(switched));
+        assertTrue(table.hasSentBefore(System.nanoTime()));
+        assertEquals(3, table.drain().size());
+        assertEquals(0, table.size());
+        assertFalse(table.hasTimeouts());
+    }
+
+    private static LightwaverfSmartTransaction transaction(int transactionid) {
+        return new LightwaverfSmartTransaction(command(transactionid));
+    }
+
+    private static LightwaverfSmartRequest command(int transactionid) {
+        LightwaverfSmartRequest command = new LightwaverfSmartRequest("feature", "write", "request",
+                new LightwaverfSmartItem());
+        command.setTransactionId(transactionid);
+        return command;
+    }
+
+    private static void sleepTicks(int ticks) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(TICK_NANOS * ticks);
+    }
+}